@@ -0,0 +1,104 @@
+package space.zhupeng.alarm.time;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips {@link DefaultTimepointLimiter} through a Parcel, and through a Bundle the way the
+ * dialog saves it across a rotation, and checks that the copy limits every time alike.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DefaultTimepointLimiterParcelTest {
+
+    private static final String KEY_LIMITER = "limiter";
+    private static final int[] TYPES = {Timepoint.HOUR, Timepoint.MINUTE};
+
+    @Test
+    public void roundTrip_empty() {
+        assertRoundTrips(new DefaultTimepointLimiter());
+    }
+
+    @Test
+    public void roundTrip_selectableOnly() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setSelectableTimes(new Timepoint[]{
+                new Timepoint(0, 0), new Timepoint(8, 15), new Timepoint(8, 45), new Timepoint(23, 59)});
+        assertRoundTrips(limiter);
+    }
+
+    @Test
+    public void roundTrip_disabledOnly() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setDisabledTimes(new Timepoint[]{
+                new Timepoint(0, 0), new Timepoint(9, 0), new Timepoint(9, 59), new Timepoint(23, 30)});
+        assertRoundTrips(limiter);
+    }
+
+    @Test
+    public void roundTrip_everything() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setMinTime(new Timepoint(6, 30));
+        limiter.setMaxTime(new Timepoint(21, 0));
+        limiter.setTimeInterval(1, 15);
+        limiter.setDisabledTimes(new Timepoint[]{new Timepoint(12, 0), new Timepoint(12, 15)});
+        assertRoundTrips(limiter);
+    }
+
+    private static void assertRoundTrips(DefaultTimepointLimiter limiter) {
+        assertSameLimits(limiter, throughParcel(limiter));
+        assertSameLimits(limiter, throughBundle(limiter));
+    }
+
+    private static DefaultTimepointLimiter throughParcel(DefaultTimepointLimiter limiter) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            limiter.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            DefaultTimepointLimiter copy = DefaultTimepointLimiter.CREATOR.createFromParcel(parcel);
+            assertEquals("bytes left unread", parcel.dataSize(), parcel.dataPosition());
+            return copy;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static DefaultTimepointLimiter throughBundle(DefaultTimepointLimiter limiter) {
+        Bundle state = new Bundle();
+        state.putParcelable(KEY_LIMITER, limiter);
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            parcel.setDataPosition(0);
+            Bundle restored = parcel.readBundle(DefaultTimepointLimiter.class.getClassLoader());
+            return restored.getParcelable(KEY_LIMITER);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void assertSameLimits(DefaultTimepointLimiter expected, DefaultTimepointLimiter actual) {
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            Timepoint time = new Timepoint(minute / 60, minute % 60);
+            String at = time.getHour() + ":" + time.getMinute();
+            assertEquals(at, expected.isOutOfRange(time), actual.isOutOfRange(time));
+            for (int resolution : TYPES) {
+                for (int index = TimePickerDialog.HOUR_INDEX; index <= TimePickerDialog.MINUTE_INDEX; index++) {
+                    assertEquals(at + " index " + index + " resolution " + resolution,
+                            expected.isOutOfRange(time, index, resolution),
+                            actual.isOutOfRange(time, index, resolution));
+                }
+                for (int type : TYPES) {
+                    assertEquals(at + " type " + type + " resolution " + resolution,
+                            expected.roundToNearest(time, type, resolution).toSeconds(),
+                            actual.roundToNearest(time, type, resolution).toSeconds());
+                }
+            }
+        }
+    }
+}
@@ -1,26 +1,54 @@
 package space.zhupeng.alarm;
 
+import android.content.Intent;
 import android.graphics.Color;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
+import android.support.v4.widget.ViewDragHelper;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
 import android.widget.TextView;
 
+import space.zhupeng.alarm.media.AlarmPlayer;
+import space.zhupeng.alarm.slide.OnSlideListener;
 import space.zhupeng.alarm.slide.SlideConfig;
 import space.zhupeng.alarm.slide.SlideHandler;
+import space.zhupeng.alarm.slide.SlideLayout;
+import space.zhupeng.alarm.store.AlarmMetrics;
 
 /**
  * Created by zhupeng on 2017/10/9.
+ * <p>
+ * Started straight from {@link AlarmReceiver} in a task of its own, and shown over the lock screen.
  */
 
 public class AlarmActivity extends AppCompatActivity {
 
+    /**
+     * {@link SystemClock#elapsedRealtime()} when the alarm broadcast was received.
+     */
+    static final String EXTRA_RECEIVED_AT = "receivedAt";
+
+    private long mCreatedAt;
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
+        mCreatedAt = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
 
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED
+                | WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON
+                | WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON
+                | WindowManager.LayoutParams.FLAG_ALLOW_LOCK_WHILE_SCREEN_ON);
         setContentView(R.layout.activity_alarm);
+        showMessage(getIntent());
 
+        final RippleView ripple = (RippleView) findViewById(R.id.ripple);
         SlideConfig config = new SlideConfig.Builder()
                 .primaryColor(getResources().getColor(R.color.colorPrimary))
                 .secondaryColor(getResources().getColor(R.color.colorAccent))
@@ -33,13 +61,99 @@ public class AlarmActivity extends AppCompatActivity {
                 .distanceThreshold(0.25f)
                 .edgeOnly(true)
                 .edgeSize(0.18f)
+                .listener(new OnSlideListener() {
+                    @Override
+                    public void onSlideStateChanged(int state) {
+                        // The content is on a hardware layer while it moves, which a running
+                        // ripple would have to re-render every frame.
+                        if (state == ViewDragHelper.STATE_IDLE) {
+                            ripple.start();
+                        } else {
+                            ripple.stop();
+                        }
+                    }
+
+                    @Override
+                    public void onSlideChange(float percent) {
+                    }
+
+                    @Override
+                    public void onSlideOpened() {
+                    }
+
+                    @Override
+                    public void onSlideClosed() {
+                    }
+                })
                 .build();
 
-        SlideHandler.attach(this, config);
+        SlideHandler.attach(this, (SlideLayout) findViewById(R.id.slidable_layout), config);
 
         TextView tvTips = (TextView) findViewById(R.id.tv_tips);
         ArrowDrawable drawable = new ArrowDrawable(Color.WHITE, 4f, 48);
         drawable.setBounds(0, 0, drawable.getMinimumWidth(), drawable.getIntrinsicHeight());
         tvTips.setCompoundDrawables(null, drawable, null, null);
+
+        if (savedInstanceState == null) {
+            recordTimeToFirstFrame();
+        }
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        showMessage(intent);
+    }
+
+    private void showMessage(Intent intent) {
+        String msg = intent.getStringExtra("msg");
+        if (!TextUtils.isEmpty(msg)) {
+            ((TextView) findViewById(R.id.tv_msg)).setText(msg);
+        }
+    }
+
+    /**
+     * Record {@link AlarmMetrics#TIME_TO_FIRST_FRAME} and {@link AlarmMetrics#CREATE_TO_FIRST_FRAME}
+     * once the first frame has been drawn.
+     */
+    private void recordTimeToFirstFrame() {
+        final long receivedAt = getIntent().getLongExtra(EXTRA_RECEIVED_AT, -1);
+        if (receivedAt < 0) return;
+        int[] ids = getIntent().getIntArrayExtra("ids");
+        final int alarmId = (ids == null || ids.length == 0 ? -1 : ids[0]);
+
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs after the traversal that draws the frame
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long drawnAt = SystemClock.elapsedRealtime();
+                        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                AlarmMetrics.record(getApplicationContext(),
+                                        AlarmMetrics.TIME_TO_FIRST_FRAME, alarmId, drawnAt - receivedAt);
+                                AlarmMetrics.record(getApplicationContext(),
+                                        AlarmMetrics.CREATE_TO_FIRST_FRAME, alarmId, drawnAt - mCreatedAt);
+                            }
+                        });
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing()) {
+            AlarmPlayer.get(this).stop();
+        }
     }
 }
@@ -4,33 +4,163 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import space.zhupeng.alarm.media.AlarmPlayer;
+import space.zhupeng.alarm.recurrence.ZoneOffsetTable;
+import space.zhupeng.alarm.store.Alarm;
+import space.zhupeng.alarm.store.AlarmStore;
 
 
 public class AlarmManagerUtil {
     public static final String ALARM_ACTION = "com.action.alarm";
 
-    public static void setAlarmTime(Context context, long timeInMillis, Intent intent) {
+    private static final String PREFS_NAME = "alarm_scheduler";
+    private static final String KEY_COALESCING_TOLERANCE = "coalescing_tolerance";
+
+    private static final Executor SCHEDULE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static final int NOT_ARMED = -1;
+
+    // The earliest alarm as of the last scheduleNext, the player is prepared when it changes
+    private static int sArmedId = NOT_ARMED;
+    private static long sArmedTriggerAt;
+
+    public interface OnAlarmsScheduledListener {
+        /**
+         * Called on the main thread once the alarms are stored and the next one is armed.
+         *
+         * @param count the number of distinct alarms that were scheduled
+         */
+        void onAlarmsScheduled(int count);
+    }
+
+    /**
+     * Arm the system AlarmManager for the earliest alarm in the store, replacing the previous
+     * registration. All alarms share this single PendingIntent, so this is one system call
+     * regardless of how many alarms exist. Whenever the armed alarm changes the
+     * {@link AlarmPlayer} is prepared for it in the background.
+     * <p>
+     * With a coalescing tolerance set (see {@link #setCoalescingTolerance}) a non-exact alarm is
+     * armed with a window of that length, so that it and the alarms following it within the
+     * tolerance are delivered by a single wakeup. An exact alarm inside that window still fires on
+     * time and takes the non-exact alarms due by then along with it.
+     */
+    public static synchronized void scheduleNext(Context context) {
         AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        PendingIntent sender = PendingIntent.getBroadcast(context, intent.getIntExtra("id", 0),
-                intent, PendingIntent.FLAG_CANCEL_CURRENT);
-        int interval = (int) intent.getLongExtra("intervalMillis", 0);
+        AlarmStore store = AlarmStore.get(context);
+        Alarm next = store.peekNext();
+        if (next == null) {
+            am.cancel(getAlarmSender(context, PendingIntent.FLAG_UPDATE_CURRENT));
+            sArmedId = NOT_ARMED;
+            sArmedTriggerAt = 0;
+            return;
+        }
+
+        // Have the ringtone ready before the alarm fires, once for every alarm that gets armed.
+        if (next.getId() != sArmedId || next.getTriggerAt() != sArmedTriggerAt) {
+            sArmedId = next.getId();
+            sArmedTriggerAt = next.getTriggerAt();
+            final Context appContext = context.getApplicationContext();
+            SCHEDULE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    AlarmPlayer.get(appContext).prepare();
+                }
+            });
+        }
+
+        PendingIntent sender = getAlarmSender(context, PendingIntent.FLAG_UPDATE_CURRENT);
+        long tolerance = getCoalescingTolerance(context);
+        if (!next.isExact() && tolerance > 0) {
+            Alarm exact = store.peekNextExact(next.getTriggerAt() + tolerance);
+            if (exact != null) {
+                next = exact;
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                am.setWindow(AlarmManager.RTC_WAKEUP, next.getTriggerAt(), tolerance, sender);
+                return;
+            }
+        }
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            am.setWindow(AlarmManager.RTC_WAKEUP, timeInMillis, interval, sender);
+            am.setExact(AlarmManager.RTC_WAKEUP, next.getTriggerAt(), sender);
+        } else {
+            am.set(AlarmManager.RTC_WAKEUP, next.getTriggerAt(), sender);
+        }
+    }
+
+    /**
+     * Let non-exact alarms whose trigger times lie within {@code toleranceMillis} of each other
+     * share one device wakeup. A non-exact alarm may then be delivered up to the tolerance away
+     * from its trigger time. 0 disables coalescing, which is the default. The next alarm is
+     * re-armed with the new tolerance on a background thread.
+     */
+    public static void setCoalescingTolerance(Context context, long toleranceMillis) {
+        if (toleranceMillis < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative");
         }
+        getPreferences(context).edit().putLong(KEY_COALESCING_TOLERANCE, toleranceMillis).apply();
+        final Context appContext = context.getApplicationContext();
+        SCHEDULE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                scheduleNext(appContext);
+            }
+        });
+    }
+
+    public static long getCoalescingTolerance(Context context) {
+        return getPreferences(context).getLong(KEY_COALESCING_TOLERANCE, 0);
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     }
 
+    private static PendingIntent getAlarmSender(Context context, int flags) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ALARM_ACTION);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    /**
+     * Remove the alarm and re-arm for the next one, on a background thread.
+     */
+    public static void cancelAlarm(Context context, final int id) {
+        final Context appContext = context.getApplicationContext();
+        SCHEDULE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (AlarmStore.get(appContext).remove(id) != null) {
+                    scheduleNext(appContext);
+                }
+            }
+        });
+    }
+
+    /**
+     * @deprecated alarms no longer own a PendingIntent per action, use {@link #cancelAlarm(Context, int)}
+     */
+    @Deprecated
     public static void cancelAlarm(Context context, String action, int id) {
-        Intent intent = new Intent(action);
-        PendingIntent pi = PendingIntent.getBroadcast(context, id, intent, PendingIntent
-                .FLAG_CANCEL_CURRENT);
-        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        am.cancel(pi);
+        cancelAlarm(context, id);
     }
 
     /**
+     * Validate the alarm, then compute its trigger time, store it and arm the next alarm on a
+     * background thread.
+     *
      * @param flag            周期性时间间隔的标志,flag = 0 表示一次性的闹钟, flag = 1 表示每天提醒的闹钟(1天的时间间隔),flag = 2
      *                        表示按周每周提醒的闹钟（一周的周期性时间间隔）
      * @param hour            时
@@ -39,89 +169,87 @@ public class AlarmManagerUtil {
      * @param week            week=0表示一次性闹钟或者按天的周期性闹钟，非0 的情况下是几就代表以周为周期性的周几的闹钟
      * @param tips            闹钟提示信息
      * @param soundOrVibrator 2表示声音和震动都执行，1表示只有铃声提醒，0表示只有震动提醒
+     * @throws IllegalArgumentException if any of the values is invalid
      */
     public static void setAlarm(Context context, int flag, int hour, int minute, int id, int
             week, String tips, int soundOrVibrator) {
-        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Calendar calendar = Calendar.getInstance();
-        long intervalMillis = 0;
-        calendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get
-                (Calendar.DAY_OF_MONTH), hour, minute, 10);
-        if (flag == 0) {
-            intervalMillis = 0;
-        } else if (flag == 1) {
-            intervalMillis = 24 * 3600 * 1000;
-        } else if (flag == 2) {
-            intervalMillis = 24 * 3600 * 1000 * 7;
-        }
-        Intent intent = new Intent(ALARM_ACTION);
-        intent.putExtra("intervalMillis", intervalMillis);
-        intent.putExtra("msg", tips);
-        intent.putExtra("id", id);
-        intent.putExtra("soundOrVibrator", soundOrVibrator);
-        PendingIntent sender = PendingIntent.getBroadcast(context, id, intent, PendingIntent
-                .FLAG_CANCEL_CURRENT);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            am.setWindow(AlarmManager.RTC_WAKEUP, calMethod(week, calendar.getTimeInMillis()),
-                    intervalMillis, sender);
-        } else {
-            if (flag == 0) {
-                am.set(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), sender);
-            } else {
-                am.setRepeating(AlarmManager.RTC_WAKEUP, calMethod(week, calendar.getTimeInMillis
-                        ()), intervalMillis, sender);
+        final Alarm alarm = new Alarm.Builder()
+                .id(id)
+                .flag(flag)
+                .time(hour, minute)
+                .week(week)
+                .tips(tips)
+                .soundOrVibrator(soundOrVibrator)
+                .build();
+        validate(alarm);
+
+        final Context appContext = context.getApplicationContext();
+        SCHEDULE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Alarm scheduled = alarm.buildUpon()
+                        .triggerAt(alarm.nextOccurrence(System.currentTimeMillis(), ZoneOffsetTable.getDefault()))
+                        .build();
+                AlarmStore.get(appContext).put(scheduled);
+                scheduleNext(appContext);
             }
-        }
+        });
     }
 
-
     /**
-     * @param weekflag 传入的是周几
-     * @param dateTime 传入的是时间戳（设置当天的年月日+从选择框拿来的时分秒）
-     * @return 返回起始闹钟时间的时间戳
+     * Schedule many alarms at once. The alarms are validated and de-duplicated by id (the last
+     * alarm with a given id wins) on the calling thread; their trigger times are then computed,
+     * stored in a single transaction and the earliest one is armed on a background thread.
+     *
+     * @param alarms   the alarms to schedule, any trigger time set on them is ignored
+     * @param listener notified on the main thread when done, may be null
+     * @throws IllegalArgumentException if any of the alarms is invalid
      */
-    private static long calMethod(int weekflag, long dateTime) {
-        long time = 0;
-        //weekflag == 0表示是按天为周期性的时间间隔或者是一次行的，weekfalg非0时表示每周几的闹钟并以周为时间间隔
-        if (weekflag != 0) {
-            Calendar c = Calendar.getInstance();
-            int week = c.get(Calendar.DAY_OF_WEEK);
-            if (1 == week) {
-                week = 7;
-            } else if (2 == week) {
-                week = 1;
-            } else if (3 == week) {
-                week = 2;
-            } else if (4 == week) {
-                week = 3;
-            } else if (5 == week) {
-                week = 4;
-            } else if (6 == week) {
-                week = 5;
-            } else if (7 == week) {
-                week = 6;
-            }
+    public static void setAlarms(Context context, Collection<Alarm> alarms,
+                                 @Nullable final OnAlarmsScheduledListener listener) {
+        final SparseArray<Alarm> unique = new SparseArray<>(alarms.size());
+        for (Alarm alarm : alarms) {
+            validate(alarm);
+            unique.put(alarm.getId(), alarm);
+        }
 
-            if (weekflag == week) {
-                if (dateTime > System.currentTimeMillis()) {
-                    time = dateTime;
-                } else {
-                    time = dateTime + 7 * 24 * 3600 * 1000;
+        final Context appContext = context.getApplicationContext();
+        SCHEDULE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                ZoneOffsetTable zone = ZoneOffsetTable.getDefault();
+                List<Alarm> scheduled = new ArrayList<>(unique.size());
+                for (int i = 0; i < unique.size(); i++) {
+                    Alarm alarm = unique.valueAt(i);
+                    scheduled.add(alarm.buildUpon()
+                            .triggerAt(alarm.nextOccurrence(now, zone))
+                            .build());
+                }
+                AlarmStore.get(appContext).putAll(scheduled);
+                scheduleNext(appContext);
+
+                if (listener != null) {
+                    final int count = scheduled.size();
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onAlarmsScheduled(count);
+                        }
+                    });
                 }
-            } else if (weekflag > week) {
-                time = dateTime + (weekflag - week) * 24 * 3600 * 1000;
-            } else if (weekflag < week) {
-                time = dateTime + (weekflag - week + 7) * 24 * 3600 * 1000;
-            }
-        } else {
-            if (dateTime > System.currentTimeMillis()) {
-                time = dateTime;
-            } else {
-                time = dateTime + 24 * 3600 * 1000;
             }
-        }
-        return time;
+        });
     }
 
-
-}
\ No newline at end of file
+    private static void validate(Alarm alarm) {
+        if (alarm.getHour() < 0 || alarm.getHour() > 23 || alarm.getMinute() < 0 || alarm.getMinute() > 59)
+            throw new IllegalArgumentException("Invalid time for " + alarm);
+        if (alarm.getFlag() != Alarm.ONCE && alarm.getFlag() != Alarm.DAILY && alarm.getFlag() != Alarm.WEEKLY)
+            throw new IllegalArgumentException("Invalid repeat flag for " + alarm);
+        if (alarm.getWeek() < 0 || alarm.getWeek() > 7)
+            throw new IllegalArgumentException("Invalid week for " + alarm);
+        if (alarm.getSoundOrVibrator() < 0 || alarm.getSoundOrVibrator() > 2)
+            throw new IllegalArgumentException("Invalid soundOrVibrator for " + alarm);
+    }
+}
@@ -3,28 +3,162 @@ package space.zhupeng.alarm;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.media.MediaPlayer;
-import android.os.Vibrator;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import space.zhupeng.alarm.media.AlarmPlayer;
+import space.zhupeng.alarm.recurrence.ZoneOffsetTable;
+import space.zhupeng.alarm.store.Alarm;
+import space.zhupeng.alarm.store.AlarmMetrics;
+import space.zhupeng.alarm.store.AlarmRecordFile;
+import space.zhupeng.alarm.store.AlarmStore;
+
+/**
+ * Delivers due alarms. The main thread only hands the broadcast over to a small bounded executor
+ * with {@link #goAsync()}; starting the {@link AlarmPlayer}, re-arming and recording metrics happen
+ * there, one delivery at a time, and only the final activity launch is posted back to the main
+ * thread.
+ */
 public class AlarmReceiver extends BroadcastReceiver {
-    private MediaPlayer mediaPlayer;
-    private Vibrator vibrator;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    // Every delivery handles all alarms due at the time it runs, so when the queue is full the
+    // queued deliveries will pick up the alarms of a rejected one and it can simply finish.
+    // Deliveries must run one at a time, otherwise two of them reschedule the same due alarm
+    // and the second one skips an occurrence.
+    private static final ThreadPoolExecutor DELIVERY_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(8),
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    if (r instanceof Delivery) {
+                        ((Delivery) r).mResult.finish();
+                    }
+                }
+            });
+
+    static {
+        DELIVERY_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        // TODO Auto-generated method stub
-        String msg = intent.getStringExtra("msg");
-        long intervalMillis = intent.getLongExtra("intervalMillis", 0);
-        if (intervalMillis != 0) {
-            AlarmManagerUtil.setAlarmTime(context, System.currentTimeMillis() + intervalMillis,
-                    intent);
+        long start = System.nanoTime();
+        long receivedAt = SystemClock.elapsedRealtime();
+        PendingResult result = goAsync();
+        DELIVERY_EXECUTOR.execute(new Delivery(context.getApplicationContext(), result,
+                receivedAt, System.nanoTime() - start));
+    }
+
+    private static final class Delivery implements Runnable {
+
+        private final Context mContext;
+        private final PendingResult mResult;
+        private final long mReceivedAt;
+        private final long mReceiveNanos;
+
+        Delivery(Context context, PendingResult result, long receivedAt, long receiveNanos) {
+            mContext = context;
+            mResult = result;
+            mReceivedAt = receivedAt;
+            mReceiveNanos = receiveNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                deliver(mReceiveNanos);
+            } finally {
+                mResult.finish();
+            }
+        }
+
+        private void deliver(long mainThreadNanos) {
+            long now = System.currentTimeMillis();
+            AlarmPlayer player = AlarmPlayer.get(mContext);
+            // Sound first, straight from the mapped records, before the alarm store is loaded.
+            AlarmRecordFile records = AlarmRecordFile.map(mContext);
+            boolean startedFromRecords = records.getCount() > 0 && records.getTriggerAt(0) <= now
+                    && player.start(records.getSoundOrVibrator(0), records.getId(0), mReceivedAt);
+
+            AlarmStore store = AlarmStore.get(mContext);
+            // Fan out every alarm coalesced into this wakeup.
+            List<Alarm> due = store.getDue(now, AlarmManagerUtil.getCoalescingTolerance(mContext));
+            if (!due.isEmpty()) {
+                Alarm first = due.get(0);
+                player.start(first.getSoundOrVibrator(), first.getId(), mReceivedAt);
+            } else if (startedFromRecords) {
+                // The record file was stale, there is no alarm screen to stop the sound from.
+                player.stop();
+            }
+            ZoneOffsetTable zone = ZoneOffsetTable.getDefault();
+            // One record file write for the whole delivery
+            store.beginBatch();
+            try {
+                for (Alarm alarm : due) {
+                    AlarmMetrics.record(mContext, AlarmMetrics.FIRE_LATENCY, alarm.getId(),
+                            now - alarm.getTriggerAt());
+                    if (alarm.isRepeating()) {
+                        // Follow the schedule rather than the delivery time so latency never adds
+                        // up, and skip any occurrences missed while the alarm was late.
+                        store.reschedule(alarm, alarm.nextOccurrence(Math.max(now, alarm.getTriggerAt()), zone));
+                    } else {
+                        store.remove(alarm.getId());
+                    }
+                }
+            } finally {
+                store.endBatch();
+            }
+            // Only the earliest remaining alarm is registered with the system.
+            AlarmManagerUtil.scheduleNext(mContext);
+
+            if (due.isEmpty()) {
+                recordMainThreadTime(-1, mainThreadNanos);
+                return;
+            }
+
+            final Alarm alarm = due.get(0);
+            int[] ids = new int[due.size()];
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = due.get(i).getId();
+                String tips = due.get(i).getTips();
+                if (tips == null) continue;
+                if (msg.length() > 0) msg.append('\n');
+                msg.append(tips);
+            }
+            // Straight to the alarm screen, which has a task of its own and shows over the lock screen
+            final Intent clockIntent = new Intent(mContext, AlarmActivity.class);
+            clockIntent.putExtra("msg", msg.toString());
+            clockIntent.putExtra("ids", ids);
+            clockIntent.putExtra(AlarmActivity.EXTRA_RECEIVED_AT, mReceivedAt);
+            clockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_NO_USER_ACTION);
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    mContext.startActivity(clockIntent);
+                    final long launchNanos = System.nanoTime() - start;
+                    DELIVERY_EXECUTOR.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            recordMainThreadTime(alarm.getId(), mainThreadNanos + launchNanos);
+                        }
+                    });
+                }
+            });
+        }
+
+        private void recordMainThreadTime(int alarmId, long nanos) {
+            AlarmMetrics.record(mContext, AlarmMetrics.MAIN_THREAD_TIME, alarmId,
+                    TimeUnit.NANOSECONDS.toMicros(nanos));
         }
-        int flag = intent.getIntExtra("soundOrVibrator", 0);
-        Intent clockIntent = new Intent(context, MainActivity.class);
-        clockIntent.putExtra("msg", msg);
-        clockIntent.putExtra("flag", flag);
-        clockIntent.putExtra("showAlarm", true);
-        clockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        context.startActivity(clockIntent);
     }
-}
\ No newline at end of file
+}
@@ -30,6 +30,8 @@ public class MainActivity extends AppCompatActivity implements TimePickerDialog.
             }
         });
 
+        TimePickerDialog.prewarm(this);
+
         tvTime.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
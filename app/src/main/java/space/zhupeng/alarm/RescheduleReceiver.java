@@ -0,0 +1,56 @@
+package space.zhupeng.alarm;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import space.zhupeng.alarm.recurrence.ZoneOffsetTable;
+import space.zhupeng.alarm.store.AlarmStore;
+
+/**
+ * Re-arms the persisted alarms after a reboot, since the system forgets every registration, and
+ * after the wall clock or the time zone changed, since the trigger times are wall clock times.
+ */
+public class RescheduleReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "RescheduleReceiver";
+
+    // Well below the time the system grants a receiver which called goAsync().
+    private static final long TIME_BUDGET_MILLIS = 2000;
+
+    @Override
+    public void onReceive(Context context, final Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reschedule(appContext, intent.getAction());
+                } finally {
+                    result.finish();
+                }
+            }
+        }, TAG).start();
+    }
+
+    private static void reschedule(Context context, String action) {
+        long start = SystemClock.elapsedRealtime();
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            ZoneOffsetTable.invalidateDefault();
+        }
+        int count = AlarmStore.get(context).recomputeAll(System.currentTimeMillis(),
+                ZoneOffsetTable.getDefault());
+        AlarmManagerUtil.scheduleNext(context);
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        if (elapsed > TIME_BUDGET_MILLIS) {
+            Log.w(TAG, "Rescheduling " + count + " alarms after " + action + " took " + elapsed
+                    + "ms, over the budget of " + TIME_BUDGET_MILLIS + "ms");
+        } else {
+            Log.d(TAG, "Rescheduled " + count + " alarms after " + action + " in " + elapsed + "ms");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package space.zhupeng.alarm;
 
+import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
@@ -11,9 +12,16 @@ import android.support.annotation.Nullable;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.animation.LinearInterpolator;
+
+import space.zhupeng.alarm.perf.FrameTimeRecorder;
 
 /**
  * Created by zhupeng on 2017/10/10.
+ * <p>
+ * The ripples are driven by a ValueAnimator on the UI thread, so they advance once per frame in
+ * step with the display. The animator only runs while the view has window focus and is shown.
+ * Its frame rate is logged by a {@link FrameTimeRecorder} named "ripple" each time it pauses.
  */
 
 public class RippleView extends View {
@@ -29,10 +37,19 @@ public class RippleView extends View {
 
     private float mTextWidth;
 
+    // Ripples are WAVE_SPACING apart and move outwards at WAVE_SPEED pixels per second.
+    private static final float WAVE_SPACING = 100f;
+    private static final float WAVE_SPEED = 80f;
+    private static final long WAVE_DURATION = (long) (WAVE_SPACING / WAVE_SPEED * 1000);
+
     private boolean isStarted;
     private float mMaxRadius;
     private float mVarRadius;
 
+    private ValueAnimator mAnimator;
+    private long mPlayTime;
+    private final FrameTimeRecorder mFrameTimeRecorder = new FrameTimeRecorder("ripple");
+
     public RippleView(Context context) {
         this(context, null);
     }
@@ -74,6 +91,18 @@ public class RippleView extends View {
         mTextPaint.setColor(mTextColor);
 
         mTextWidth = mTextPaint.measureText(mText);
+
+        mAnimator = ValueAnimator.ofFloat(0f, WAVE_SPACING);
+        mAnimator.setDuration(WAVE_DURATION);
+        mAnimator.setRepeatCount(ValueAnimator.INFINITE);
+        mAnimator.setInterpolator(new LinearInterpolator());
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                mVarRadius = (Float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
     }
 
     @Override
@@ -81,18 +110,35 @@ public class RippleView extends View {
         setMeasuredDimension((int) (mTextWidth * 3f), (int) (mTextWidth * 3f));
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mMaxRadius = w / 2;
+        updateAnimator();
+    }
+
     @Override
     public void onWindowFocusChanged(boolean hasWindowFocus) {
         super.onWindowFocusChanged(hasWindowFocus);
         if (hasWindowFocus) {
-            mMaxRadius = getMeasuredWidth() / 2;
-            mVarRadius = mMaxRadius % 100;
             start();
         } else {
             stop();
         }
     }
 
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateAnimator();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateAnimator();
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
@@ -103,12 +149,33 @@ public class RippleView extends View {
     public void start() {
         if (!isStarted) {
             isStarted = true;
-            new Thread(runnable).start();
+            updateAnimator();
         }
     }
 
     public void stop() {
-        isStarted = true;
+        if (isStarted) {
+            isStarted = false;
+            updateAnimator();
+        }
+    }
+
+    /**
+     * Run the animator while the ripples are started, laid out and visible, and pause it
+     * otherwise. A paused ripple resumes where it stopped.
+     */
+    private void updateAnimator() {
+        boolean run = isStarted && mMaxRadius > 0 && getWindowToken() != null
+                && getWindowVisibility() == VISIBLE && isShown();
+        if (run && !mAnimator.isStarted()) {
+            mAnimator.start();
+            mAnimator.setCurrentPlayTime(mPlayTime);
+            mFrameTimeRecorder.start();
+        } else if (!run && mAnimator.isStarted()) {
+            mPlayTime = mAnimator.getCurrentPlayTime() % WAVE_DURATION;
+            mAnimator.cancel();
+            mFrameTimeRecorder.stop();
+        }
     }
 
     @Override
@@ -116,6 +183,7 @@ public class RippleView extends View {
         if (mMaxRadius <= 0.0F) {
             return;
         }
+        long start = System.nanoTime();
 
         float cx = getMeasuredWidth() / 2f;
         float cy = getMeasuredHeight() / 2f;
@@ -128,7 +196,7 @@ public class RippleView extends View {
         float baseline = mTextWidth * 1.5f - (fontMetrics.bottom - fontMetrics.top) / 2 - fontMetrics.top;
         canvas.drawText(mText, mTextWidth, baseline, mTextPaint);
 
-        float waveRadius = mVarRadius % 100;
+        float waveRadius = mVarRadius % WAVE_SPACING;
         while (true) {
             int alpha = (int) (255.0F * (1.0F - (waveRadius + radius) / mMaxRadius));
             if (alpha <= 0) {
@@ -137,26 +205,8 @@ public class RippleView extends View {
 
             mStrokePaint.setAlpha(alpha);
             canvas.drawCircle(cx, cy, waveRadius + radius, mStrokePaint);
-            waveRadius += 100;
+            waveRadius += WAVE_SPACING;
         }
+        mFrameTimeRecorder.recordDraw(System.nanoTime() - start);
     }
-
-    private final Runnable runnable = new Runnable() {
-        @Override
-        public void run() {
-            while (isStarted) {
-                mVarRadius += 4.0F;
-                if (mVarRadius > mMaxRadius) {
-                    mVarRadius = mMaxRadius % 100;
-                    postInvalidate();
-                }
-                postInvalidate();
-                try {
-                    Thread.sleep(50L);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-    };
 }
@@ -0,0 +1,243 @@
+package space.zhupeng.alarm.media;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Vibrator;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import space.zhupeng.alarm.store.AlarmMetrics;
+
+/**
+ * Plays the alarm sound and vibration. A {@link MediaPlayer} is kept for the whole process and
+ * prepared with the alarm ringtone as soon as an alarm is scheduled, so when the alarm fires
+ * starting the sound is only a call to {@link MediaPlayer#start()}.
+ * <p>
+ * The sound starts quietly and is raised step by step to full volume, and both sound and
+ * vibration stop by themselves after {@link #MAX_PLAY_MILLIS}.
+ */
+public final class AlarmPlayer {
+
+    private static final String TAG = "AlarmPlayer";
+
+    /**
+     * Values of the soundOrVibrator parameter of
+     * {@link space.zhupeng.alarm.AlarmManagerUtil#setAlarm}.
+     */
+    public static final int VIBRATE = 0;
+    public static final int SOUND = 1;
+    public static final int SOUND_AND_VIBRATE = 2;
+
+    private static final long[] VIBRATE_PATTERN = {0, 800, 600};
+
+    private static final float START_VOLUME = 0.1f;
+    private static final int VOLUME_STEPS = 10;
+    private static final long VOLUME_STEP_MILLIS = 3000;
+    private static final long MAX_PLAY_MILLIS = 10 * 60 * 1000;
+
+    // Prepares the player again after an alarm was stopped, off the thread that stopped it.
+    private static final Executor PREPARE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static AlarmPlayer sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private MediaPlayer mPlayer;
+    private Uri mPreparedUri;
+    private boolean mPrepared;
+    private boolean mPlaying;
+    private int mVolumeStep;
+
+    private final Runnable mRaiseVolume = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (AlarmPlayer.this) {
+                if (!mPlaying || !mPrepared) return;
+                mVolumeStep++;
+                float volume = START_VOLUME + (1f - START_VOLUME) * mVolumeStep / VOLUME_STEPS;
+                mPlayer.setVolume(volume, volume);
+                if (mVolumeStep < VOLUME_STEPS) {
+                    mHandler.postDelayed(this, VOLUME_STEP_MILLIS);
+                }
+            }
+        }
+    };
+
+    private final Runnable mPrepare = new Runnable() {
+        @Override
+        public void run() {
+            prepare();
+        }
+    };
+
+    private final Runnable mTimeout = new Runnable() {
+        @Override
+        public void run() {
+            stop();
+        }
+    };
+
+    private AlarmPlayer(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized AlarmPlayer get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlarmPlayer(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Resolve the alarm ringtone and get the player ready to start it. Does nothing if the player
+     * is already prepared with the current ringtone or is playing.
+     * <p>
+     * The ringtone is prepared on the calling thread without holding the lock of this player, so
+     * {@link #stop()} and the volume steps on the main thread never wait for it.
+     */
+    @WorkerThread
+    public void prepare() {
+        synchronized (this) {
+            if (mPlaying) return;
+        }
+        prepareIfNeeded();
+    }
+
+    private void prepareIfNeeded() {
+        Uri uri = resolveRingtone();
+        synchronized (this) {
+            if (uri == null) {
+                mPrepared = false;
+                return;
+            }
+            if (mPrepared && uri.equals(mPreparedUri)) return;
+        }
+
+        MediaPlayer player = new MediaPlayer();
+        try {
+            player.setAudioStreamType(AudioManager.STREAM_ALARM);
+            player.setDataSource(mContext, uri);
+            player.setLooping(true);
+            player.prepare();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to prepare " + uri, e);
+            player.release();
+            return;
+        }
+
+        MediaPlayer old;
+        synchronized (this) {
+            // Another thread may have prepared the same ringtone meanwhile, and a playing player
+            // is never swapped.
+            if (mPlaying && mPrepared || mPrepared && uri.equals(mPreparedUri)) {
+                old = player;
+            } else {
+                old = mPlayer;
+                mPlayer = player;
+                mPreparedUri = uri;
+                mPrepared = true;
+            }
+        }
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    /**
+     * Start the sound and/or vibration. Does nothing if the alarm is already playing, e.g. when
+     * several alarms are delivered together. If the player is not prepared yet it is prepared
+     * first, on the calling thread.
+     *
+     * @param soundOrVibrator one of {@link #VIBRATE}, {@link #SOUND}, {@link #SOUND_AND_VIBRATE}
+     * @param alarmId         the alarm the time to first sound is recorded for
+     * @param receivedAt      {@link SystemClock#elapsedRealtime()} when the broadcast was received
+     * @return true if this call started the alarm, false if it was already playing
+     */
+    @WorkerThread
+    public boolean start(int soundOrVibrator, int alarmId, long receivedAt) {
+        boolean prepared;
+        synchronized (this) {
+            if (mPlaying) return false;
+            mPlaying = true;
+            prepared = mPrepared;
+        }
+        if (soundOrVibrator != VIBRATE && !prepared) {
+            prepareIfNeeded();
+        }
+
+        boolean sounding = false;
+        synchronized (this) {
+            // Stopped while the ringtone was prepared.
+            if (!mPlaying) return true;
+
+            if (soundOrVibrator != VIBRATE && mPrepared) {
+                mVolumeStep = 0;
+                mPlayer.setVolume(START_VOLUME, START_VOLUME);
+                mPlayer.start();
+                sounding = true;
+                mHandler.postDelayed(mRaiseVolume, VOLUME_STEP_MILLIS);
+            }
+            // Vibrate anyway when the ringtone can not be played.
+            if (soundOrVibrator != SOUND || !sounding) {
+                Vibrator vibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
+                if (vibrator != null && vibrator.hasVibrator()) {
+                    vibrator.vibrate(VIBRATE_PATTERN, 0);
+                }
+            }
+            mHandler.postDelayed(mTimeout, MAX_PLAY_MILLIS);
+        }
+        if (sounding) {
+            AlarmMetrics.record(mContext, AlarmMetrics.TIME_TO_FIRST_SOUND, alarmId,
+                    SystemClock.elapsedRealtime() - receivedAt);
+        }
+        return true;
+    }
+
+    public synchronized boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /**
+     * Stop the sound and vibration. A player is prepared again in the background for the next
+     * alarm.
+     */
+    public synchronized void stop() {
+        if (!mPlaying) return;
+        mPlaying = false;
+        mHandler.removeCallbacks(mRaiseVolume);
+        mHandler.removeCallbacks(mTimeout);
+
+        if (mPrepared && mPlayer.isPlaying()) {
+            // A stopped player has to be prepared again before it can be started.
+            mPlayer.stop();
+            mPrepared = false;
+        }
+        Vibrator vibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
+        if (vibrator != null) {
+            vibrator.cancel();
+        }
+        PREPARE_EXECUTOR.execute(mPrepare);
+    }
+
+    private Uri resolveRingtone() {
+        Uri uri = RingtoneManager.getActualDefaultRingtoneUri(mContext, RingtoneManager.TYPE_ALARM);
+        if (uri == null) {
+            uri = RingtoneManager.getActualDefaultRingtoneUri(mContext, RingtoneManager.TYPE_RINGTONE);
+        }
+        if (uri == null) {
+            uri = RingtoneManager.getActualDefaultRingtoneUri(mContext, RingtoneManager.TYPE_NOTIFICATION);
+        }
+        return uri;
+    }
+}
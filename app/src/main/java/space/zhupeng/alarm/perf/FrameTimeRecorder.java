@@ -0,0 +1,127 @@
+package space.zhupeng.alarm.perf;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * Measures the frames of a gesture: the interval between consecutive frames from the
+ * Choreographer, the time the view spends drawing each frame and the latency from a touch event
+ * to the end of the draw that shows it. A summary is logged when the gesture ends.
+ * <p>
+ * The latency stops once the frame is recorded; the render thread and the display add their own
+ * fixed pipeline of one to two frames before the photons.
+ * <p>
+ * Recording is off unless enabled with {@code adb shell setprop log.tag.FrameTimeRecorder DEBUG},
+ * and needs Jelly Bean or later. The Choreographer is only touched from there on, so a recorder can
+ * be created on any version.
+ */
+public final class FrameTimeRecorder {
+    private static final String TAG = "FrameTimeRecorder";
+
+    private static final int MAX_FRAMES = 600;
+    // Frames further apart than one and a half 60Hz frames missed a vsync.
+    private static final long JANK_NANOS = 25000000L;
+
+    private final String mName;
+    private final long[] mIntervals = new long[MAX_FRAMES];
+    private final long[] mDrawTimes = new long[MAX_FRAMES];
+    private final long[] mLatencies = new long[MAX_FRAMES];
+    private int mIntervalCount;
+    private int mDrawCount;
+    private int mLatencyCount;
+    // Uptime of the oldest touch event not drawn yet, 0 if there is none
+    private long mPendingInputTime;
+    private long mLastFrameNanos;
+    private boolean mRecording;
+    // Created on the first start, as the Choreographer classes are missing before Jelly Bean
+    private FrameCallback mFrameCallback;
+
+    public FrameTimeRecorder(String name) {
+        mName = name;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void start() {
+        if (mRecording || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || !Log.isLoggable(TAG, Log.DEBUG)) {
+            return;
+        }
+        if (mFrameCallback == null) mFrameCallback = new FrameCallback();
+        mRecording = true;
+        mIntervalCount = 0;
+        mDrawCount = 0;
+        mLatencyCount = 0;
+        mPendingInputTime = 0;
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * @param nanos the time spent drawing one frame
+     */
+    public void recordDraw(long nanos) {
+        if (!mRecording) return;
+        if (mDrawCount < MAX_FRAMES) mDrawTimes[mDrawCount++] = nanos;
+        if (mPendingInputTime != 0 && mLatencyCount < MAX_FRAMES) {
+            mLatencies[mLatencyCount++] = (SystemClock.uptimeMillis() - mPendingInputTime) * 1000000L;
+        }
+        mPendingInputTime = 0;
+    }
+
+    /**
+     * @param eventTime the {@link android.view.MotionEvent#getEventTime()} of a touch event which
+     *                  moves the view
+     */
+    public void recordInput(long eventTime) {
+        if (mRecording && mPendingInputTime == 0) mPendingInputTime = eventTime;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void stop() {
+        if (!mRecording) return;
+        mRecording = false;
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        if (mIntervalCount == 0) return;
+
+        int janky = 0;
+        for (int i = 0; i < mIntervalCount; i++) {
+            if (mIntervals[i] > JANK_NANOS) janky++;
+        }
+        Log.d(TAG, mName + ": " + mIntervalCount + " frames, " + janky + " janky"
+                + ", interval " + summary(mIntervals, mIntervalCount)
+                + ", draw " + summary(mDrawTimes, mDrawCount)
+                + ", input to draw " + summary(mLatencies, mLatencyCount));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class FrameCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) return;
+            if (mLastFrameNanos != 0 && mIntervalCount < MAX_FRAMES) {
+                mIntervals[mIntervalCount++] = frameTimeNanos - mLastFrameNanos;
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private static String summary(long[] values, int count) {
+        if (count == 0) return "-";
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value : sorted) total += value;
+        return "mean " + micros(total / count) + " p50 " + micros(sorted[count / 2])
+                + " p90 " + micros(sorted[count * 9 / 10]) + " max " + micros(sorted[count - 1]);
+    }
+
+    private static String micros(long nanos) {
+        return nanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,96 @@
+package space.zhupeng.alarm.recurrence;
+
+/**
+ * Computes when an alarm fires next. Works on primitive epoch millis with a
+ * {@link ZoneOffsetTable}, so a call never allocates.
+ * <p>
+ * Every kind of alarm is described by a time of day and a mask of the days of the week on which
+ * it may fire: a one-shot or daily alarm uses {@link #EVERY_DAY}, a weekly alarm uses
+ * {@link #dayMask(int)} of its day, and any other set of days can be combined into a mask, e.g.
+ * {@link #WORKDAYS}.
+ * <p>
+ * Days of the week are numbered as in {@link space.zhupeng.alarm.AlarmManagerUtil#setAlarm},
+ * 1 is Monday and 7 is Sunday.
+ */
+public final class Recurrence {
+
+    public static final int MONDAY = 1;
+    public static final int TUESDAY = 2;
+    public static final int WEDNESDAY = 3;
+    public static final int THURSDAY = 4;
+    public static final int FRIDAY = 5;
+    public static final int SATURDAY = 6;
+    public static final int SUNDAY = 7;
+
+    public static final int EVERY_DAY = 0x7f;
+    public static final int WORKDAYS = 0x1f;
+
+    public static final long MINUTE_MILLIS = 60L * 1000;
+    public static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+
+    // 1970-01-01 was a Thursday.
+    private static final int EPOCH_DAY_OF_WEEK = THURSDAY;
+
+    private Recurrence() {
+    }
+
+    /**
+     * @param dayOfWeek 1 (Monday) to 7 (Sunday), anything else means every day
+     * @return the mask with only that day set
+     */
+    public static int dayMask(int dayOfWeek) {
+        if (dayOfWeek < MONDAY || dayOfWeek > SUNDAY) return EVERY_DAY;
+        return 1 << (dayOfWeek - 1);
+    }
+
+    /**
+     * @return the day of the week, 1 (Monday) to 7 (Sunday), of the instant in the given zone
+     */
+    public static int dayOfWeek(long utcMillis, ZoneOffsetTable zone) {
+        return dayOfWeekOfEpochDay(floorDiv(zone.toLocal(utcMillis), DAY_MILLIS));
+    }
+
+    /**
+     * Find the first instant strictly after {@code after} at which the local time is
+     * {@code hour:minute} on one of the days in {@code dayMask}.
+     *
+     * @param hour    0 - 23
+     * @param minute  0 - 59
+     * @param dayMask days of the week the alarm may fire on, bit 0 is Monday
+     * @param after   the instant to search from, exclusive
+     * @param zone    the zone the alarm time is expressed in
+     * @return the next occurrence in UTC millis, or -1 if the mask is empty
+     */
+    public static long nextOccurrence(int hour, int minute, int dayMask, long after,
+                                      ZoneOffsetTable zone) {
+        dayMask &= EVERY_DAY;
+        if (dayMask == 0) return -1;
+
+        long timeOfDay = hour * 60 * MINUTE_MILLIS + minute * MINUTE_MILLIS;
+        long epochDay = floorDiv(zone.toLocal(after), DAY_MILLIS);
+        int dayOfWeek = dayOfWeekOfEpochDay(epochDay);
+        // Today may already be past the alarm time, so look at up to 8 days.
+        for (int i = 0; i <= 7; i++) {
+            if ((dayMask & (1 << (dayOfWeek - 1))) != 0) {
+                long occurrence = zone.toUtc((epochDay + i) * DAY_MILLIS + timeOfDay);
+                if (occurrence > after) return occurrence;
+            }
+            dayOfWeek = dayOfWeek == SUNDAY ? MONDAY : dayOfWeek + 1;
+        }
+        return -1;
+    }
+
+    private static int dayOfWeekOfEpochDay(long epochDay) {
+        return (int) floorMod(epochDay + EPOCH_DAY_OF_WEEK - 1, 7) + 1;
+    }
+
+    static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) q--;
+        return q;
+    }
+
+    static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
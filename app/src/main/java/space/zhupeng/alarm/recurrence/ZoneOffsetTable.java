@@ -0,0 +1,153 @@
+package space.zhupeng.alarm.recurrence;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Precomputed UTC offsets of a time zone. The transitions (DST changes, zone rule changes) of a
+ * window of years around the time of creation are resolved once, after which looking up the
+ * offset of an instant is a binary search over a primitive array and never allocates.
+ * Instants outside of the window fall back to {@link TimeZone#getOffset(long)}.
+ */
+public final class ZoneOffsetTable {
+
+    private static final long HOUR_MILLIS = 3600L * 1000;
+    private static final long YEAR_MILLIS = 366L * 24 * HOUR_MILLIS;
+
+    // Transitions closer together than this may be missed, no zone rule comes close to it.
+    private static final long SAMPLE_STEP = 6 * HOUR_MILLIS;
+    private static final int YEARS_BEFORE = 1;
+    private static final int YEARS_AFTER = 10;
+
+    private static volatile ZoneOffsetTable sDefault;
+
+    private final TimeZone mZone;
+    private final long mStart;
+    private final long mEnd;
+    // mOffsets[0] applies before mTransitions[0], mOffsets[i + 1] from mTransitions[i] on.
+    private final long[] mTransitions;
+    private final int[] mOffsets;
+
+    private ZoneOffsetTable(TimeZone zone, long now) {
+        mZone = zone;
+        mStart = now - YEARS_BEFORE * YEAR_MILLIS;
+        mEnd = now + YEARS_AFTER * YEAR_MILLIS;
+
+        long[] transitions = new long[16];
+        int[] offsets = new int[17];
+        int count = 0;
+        int offset = zone.getOffset(mStart);
+        offsets[0] = offset;
+        for (long t = mStart + SAMPLE_STEP; t < mEnd; t += SAMPLE_STEP) {
+            int next = zone.getOffset(t);
+            if (next == offset) continue;
+
+            // Narrow the change down to the exact millisecond.
+            long lo = t - SAMPLE_STEP;
+            long hi = t;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (zone.getOffset(mid) == offset) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (count == transitions.length) {
+                transitions = Arrays.copyOf(transitions, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2 + 1);
+            }
+            transitions[count] = hi;
+            offsets[++count] = next;
+            offset = next;
+        }
+        mTransitions = Arrays.copyOf(transitions, count);
+        mOffsets = Arrays.copyOf(offsets, count + 1);
+    }
+
+    public static ZoneOffsetTable of(TimeZone zone) {
+        return new ZoneOffsetTable(zone, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the table of the device time zone, built on first use
+     */
+    public static ZoneOffsetTable getDefault() {
+        ZoneOffsetTable table = sDefault;
+        if (table == null) {
+            table = of(TimeZone.getDefault());
+            sDefault = table;
+        }
+        return table;
+    }
+
+    /**
+     * Drop the cached default table, e.g. after the device time zone changed.
+     */
+    public static void invalidateDefault() {
+        sDefault = null;
+    }
+
+    public TimeZone getZone() {
+        return mZone;
+    }
+
+    /**
+     * @param utcMillis an instant
+     * @return the offset from UTC in millis in effect at that instant
+     */
+    public int getOffset(long utcMillis) {
+        if (utcMillis < mStart || utcMillis >= mEnd) {
+            return mZone.getOffset(utcMillis);
+        }
+        // Count the transitions at or before the instant.
+        int lo = 0;
+        int hi = mTransitions.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mTransitions[mid] <= utcMillis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return mOffsets[lo];
+    }
+
+    /**
+     * @param utcMillis an instant
+     * @return the local wall clock time of the instant, as millis since the local epoch
+     */
+    public long toLocal(long utcMillis) {
+        return utcMillis + getOffset(utcMillis);
+    }
+
+    /**
+     * Convert a local wall clock time to an instant. A local time which occurs twice (when the
+     * clocks fall back) resolves to the earlier instant; a local time skipped by a forward
+     * transition is moved forward by the length of the gap.
+     *
+     * @param localMillis local wall clock time, as millis since the local epoch
+     * @return the instant
+     */
+    public long toUtc(long localMillis) {
+        // No zone changes its offset twice within two days, so the offsets a day before and
+        // after bracket whatever happens around this local time.
+        int before = getOffset(localMillis - 24 * HOUR_MILLIS);
+        int after = getOffset(localMillis + 24 * HOUR_MILLIS);
+        if (before == after) {
+            return localMillis - before;
+        }
+
+        long utcBefore = localMillis - before;
+        long utcAfter = localMillis - after;
+        boolean beforeValid = getOffset(utcBefore) == before;
+        boolean afterValid = getOffset(utcAfter) == after;
+        if (beforeValid && afterValid) {
+            return Math.min(utcBefore, utcAfter);
+        } else if (afterValid) {
+            return utcAfter;
+        }
+        return utcBefore;
+    }
+}
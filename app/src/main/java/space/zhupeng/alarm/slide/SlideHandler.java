@@ -1,16 +1,19 @@
 package space.zhupeng.alarm.slide;
 
-import android.animation.ArgbEvaluator;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.os.Build;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.Window;
 
 import space.zhupeng.alarm.R;
 
 public final class SlideHandler {
 
+    // The status bar colour goes from start to end in this many steps while sliding.
+    private static final int STATUS_BAR_STEPS = 32;
+
     private SlideHandler() {
     }
 
@@ -23,7 +26,8 @@ public final class SlideHandler {
         final SlideLayout layout = initSlideLayout(activity, null);
         layout.setOnLayoutSlideListener(new SlideLayout.OnLayoutSlideListener() {
 
-            private final ArgbEvaluator mEvaluator = new ArgbEvaluator();
+            private final StatusBarTint mTint =
+                    new StatusBarTint(activity.getWindow(), startStatusBarColor, endStatusBarColor);
 
             @Override
             public void onStateChanged(int state) {
@@ -41,13 +45,10 @@ public final class SlideHandler {
 
             }
 
-            @TargetApi(Build.VERSION_CODES.LOLLIPOP)
             @Override
             public void onSlideChange(float percent) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP &&
-                        startStatusBarColor != -1 && endStatusBarColor != -1) {
-                    int newColor = (int) mEvaluator.evaluate(percent, startStatusBarColor, endStatusBarColor);
-                    activity.getWindow().setStatusBarColor(newColor);
+                if (startStatusBarColor != -1 && endStatusBarColor != -1) {
+                    mTint.apply(percent);
                 }
             }
         });
@@ -56,11 +57,23 @@ public final class SlideHandler {
     }
 
     public static Slide attach(final Activity activity, final SlideConfig config) {
+        return install(activity, initSlideLayout(activity, config), config);
+    }
 
-        final SlideLayout layout = initSlideLayout(activity, config);
+    /**
+     * Attach to a SlideLayout the activity already declares around its content. Nothing is
+     * removed from or added to the window, so the first frame is laid out only once.
+     */
+    public static Slide attach(final Activity activity, final SlideLayout layout, final SlideConfig config) {
+        layout.setConfig(config);
+        return install(activity, layout, config);
+    }
+
+    private static Slide install(final Activity activity, final SlideLayout layout, final SlideConfig config) {
         layout.setOnLayoutSlideListener(new SlideLayout.OnLayoutSlideListener() {
 
-            private final ArgbEvaluator mEvaluator = new ArgbEvaluator();
+            private final StatusBarTint mTint = new StatusBarTint(activity.getWindow(),
+                    config.getPrimaryColor(), config.getSecondaryColor());
 
             @Override
             public void onStateChanged(int state) {
@@ -86,16 +99,10 @@ public final class SlideHandler {
                 }
             }
 
-            @TargetApi(Build.VERSION_CODES.LOLLIPOP)
             @Override
             public void onSlideChange(float percent) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP &&
-                        config.areStatusBarColorsValid()) {
-
-                    int newColor = (int) mEvaluator.evaluate(percent, config.getPrimaryColor(),
-                            config.getSecondaryColor());
-
-                    activity.getWindow().setStatusBarColor(newColor);
+                if (config.areStatusBarColorsValid()) {
+                    mTint.apply(percent);
                 }
 
                 if (config.getListener() != null) {
@@ -107,6 +114,46 @@ public final class SlideHandler {
         return init(layout);
     }
 
+    /**
+     * Blends the status bar colour on ints and only touches the window when the blend moves to
+     * another of the {@link #STATUS_BAR_STEPS} steps.
+     */
+    private static final class StatusBarTint {
+        private final Window mWindow;
+        private final int mStartColor;
+        private final int mEndColor;
+        private int mLastStep = -1;
+
+        StatusBarTint(Window window, int startColor, int endColor) {
+            mWindow = window;
+            mStartColor = startColor;
+            mEndColor = endColor;
+        }
+
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        void apply(float percent) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+
+            int step = Math.round(Math.max(0f, Math.min(1f, percent)) * STATUS_BAR_STEPS);
+            if (step == mLastStep) return;
+            mLastStep = step;
+            mWindow.setStatusBarColor(blend(mStartColor, mEndColor, step, STATUS_BAR_STEPS));
+        }
+
+        /**
+         * @return the colour step / steps of the way from start to end, channel by channel
+         */
+        static int blend(int start, int end, int step, int steps) {
+            int color = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int from = (start >>> shift) & 0xff;
+                int to = (end >>> shift) & 0xff;
+                color |= (from + (to - from) * step / steps) << shift;
+            }
+            return color;
+        }
+    }
+
     private static SlideLayout initSlideLayout(final Activity activity, final SlideConfig config) {
 
         ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
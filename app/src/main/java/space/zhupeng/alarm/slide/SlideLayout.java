@@ -1,22 +1,46 @@
 package space.zhupeng.alarm.slide;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.support.annotation.NonNull;
 import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewGroupCompat;
 import android.support.v4.widget.ViewDragHelper;
+import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.FrameLayout;
 
-class SlideLayout extends FrameLayout {
+import space.zhupeng.alarm.perf.FrameTimeRecorder;
+
+/**
+ * Moves the content view with a ViewDragHelper and finishes the activity once it is slid away.
+ * <p>
+ * While the content is dragged or settling it is drawn into a hardware layer, so a frame only
+ * composites that layer at its new offset. The scrim is painted by this layout in dispatchDraw
+ * and only over the strip the content has uncovered, instead of by a full-screen view.
+ * <p>
+ * The layout can also be declared in the activity's own layout file around the content, and be
+ * set up with {@link SlideHandler#attach(android.app.Activity, SlideLayout, SlideConfig)}. The
+ * window's views are then left as they are instead of being re-parented after inflation.
+ */
+public class SlideLayout extends FrameLayout {
 
     private static final int MIN_FLING_VELOCITY = 400; // dips per second
-
-    private int mScreenWidth;
-    private int mScreenHeight;
-
-    private View mDimView;
+    // How far ahead the release velocity is projected to decide whether to dismiss
+    private static final float FLING_PROJECTION_SECONDS = 0.1f;
+    // Releases slower than this count as letting go at rest
+    private static final int RESTING_VELOCITY = 100; // dips per second
+
+    // The size of this layout, which the content slides across
+    private int mWidth;
+    private int mHeight;
+    private float mRestingVelocity;
+
+    private final Paint mScrimPaint = new Paint();
+    private int mScrimAlpha;
+    private final FrameTimeRecorder mFrameTimeRecorder = new FrameTimeRecorder("slide");
     private View mDecorView;
     private ViewDragHelper mDragHelper;
     private OnLayoutSlideListener mListener;
@@ -28,7 +52,16 @@ class SlideLayout extends FrameLayout {
     private SlideConfig mConfig;
 
     public SlideLayout(@NonNull Context context) {
-        super(context);
+        this(context, (AttributeSet) null);
+    }
+
+    /**
+     * Inflated from a layout file, where the first child is the content that slides.
+     */
+    public SlideLayout(@NonNull Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+        setConfig(null);
     }
 
     public SlideLayout(Context context, View decorView) {
@@ -38,44 +71,63 @@ class SlideLayout extends FrameLayout {
     public SlideLayout(Context context, View decorView, SlideConfig config) {
         super(context);
         mDecorView = decorView;
-        mConfig = (config == null ? new SlideConfig.Builder().build() : config);
         init();
+        setConfig(config);
     }
 
     private void init() {
-        mScreenWidth = getResources().getDisplayMetrics().widthPixels;
+        ViewGroupCompat.setMotionEventSplittingEnabled(this, false);
+    }
+
+    /**
+     * The range of the drag is the size of this layout rather than of the display, so it leaves
+     * out the system bars and follows multi-window and rotation.
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mWidth = w;
+        mHeight = h;
+    }
+
+    /**
+     * Set up the drag and the scrim for the config, or for the default one when it is null.
+     */
+    void setConfig(SlideConfig config) {
+        mConfig = (config == null ? new SlideConfig.Builder().build() : config);
 
         final float density = getResources().getDisplayMetrics().density;
         final float minVel = MIN_FLING_VELOCITY * density;
+        mRestingVelocity = RESTING_VELOCITY * density;
 
         ViewDragHelper.Callback callback;
         switch (mConfig.getPosition()) {
             case SlideConfig.LEFT:
-                callback = mLeftCallback;
+                callback = new DragCallback(true, true, false);
                 mEdgePosition = ViewDragHelper.EDGE_LEFT;
                 break;
             case SlideConfig.RIGHT:
-                callback = mRightCallback;
+                callback = new DragCallback(true, false, true);
                 mEdgePosition = ViewDragHelper.EDGE_RIGHT;
                 break;
             case SlideConfig.TOP:
-                callback = mTopCallback;
+                callback = new DragCallback(false, true, false);
                 mEdgePosition = ViewDragHelper.EDGE_TOP;
                 break;
             case SlideConfig.BOTTOM:
-                callback = mBottomCallback;
+                callback = new DragCallback(false, false, true);
                 mEdgePosition = ViewDragHelper.EDGE_BOTTOM;
                 break;
             case SlideConfig.VERTICAL:
-                callback = mVerticalCallback;
+                callback = new DragCallback(false, true, true);
                 mEdgePosition = ViewDragHelper.EDGE_TOP | ViewDragHelper.EDGE_BOTTOM;
                 break;
             case SlideConfig.HORIZONTAL:
-                callback = mHorizontalCallback;
+                callback = new DragCallback(true, true, true);
                 mEdgePosition = ViewDragHelper.EDGE_LEFT | ViewDragHelper.EDGE_RIGHT;
                 break;
             default:
-                callback = mLeftCallback;
+                callback = new DragCallback(true, true, false);
                 mEdgePosition = ViewDragHelper.EDGE_LEFT;
         }
 
@@ -83,27 +135,17 @@ class SlideLayout extends FrameLayout {
         mDragHelper.setMinVelocity(minVel);
         mDragHelper.setEdgeTrackingEnabled(mEdgePosition);
 
-        ViewGroupCompat.setMotionEventSplittingEnabled(this, false);
+        // Setup the scrim, drawn in dispatchDraw
+        mScrimPaint.setColor(mConfig.getScrimColor());
+        mScrimAlpha = Math.round(mConfig.getScrimStartAlpha() * 255);
+    }
 
-        // Setup the dimmer view
-        mDimView = new View(getContext());
-        mDimView.setBackgroundColor(mConfig.getScrimColor());
-        mDimView.setAlpha(mConfig.getScrimStartAlpha());
-
-        // Add the dimmer view to the layout
-        addView(mDimView);
-
-        /*
-         * This is so we can get the height of the view and
-         * ignore the system navigation that would be included if we
-         * retrieved this value from the DisplayMetrics
-         */
-        post(new Runnable() {
-            @Override
-            public void run() {
-                mScreenHeight = getHeight();
-            }
-        });
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        if (mDecorView == null && getChildCount() > 0) {
+            mDecorView = getChildAt(0);
+        }
     }
 
     @Override
@@ -128,6 +170,10 @@ class SlideLayout extends FrameLayout {
     public boolean onTouchEvent(MotionEvent event) {
         if (isLocked) return false;
 
+        if (event.getActionMasked() == MotionEvent.ACTION_MOVE) {
+            mFrameTimeRecorder.recordInput(event.getEventTime());
+        }
+
         try {
             mDragHelper.processTouchEvent(event);
         } catch (IllegalArgumentException e) {
@@ -146,6 +192,53 @@ class SlideLayout extends FrameLayout {
         }
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        drawScrim(canvas);
+        super.dispatchDraw(canvas);
+        mFrameTimeRecorder.recordDraw(System.nanoTime() - start);
+    }
+
+    /**
+     * Paint the scrim over the part of this layout the content does not cover.
+     */
+    private void drawScrim(Canvas canvas) {
+        if (mScrimAlpha == 0) return;
+        int left = mDecorView.getLeft();
+        int top = mDecorView.getTop();
+        if (left == 0 && top == 0) return;
+
+        // The scrim color may be translucent itself
+        mScrimPaint.setAlpha(mScrimAlpha * (mConfig.getScrimColor() >>> 24) / 255);
+        if (left > 0) {
+            canvas.drawRect(0, 0, left, getHeight(), mScrimPaint);
+        } else if (left < 0) {
+            canvas.drawRect(mDecorView.getRight(), 0, getWidth(), getHeight(), mScrimPaint);
+        }
+        if (top > 0) {
+            canvas.drawRect(0, 0, getWidth(), top, mScrimPaint);
+        } else if (top < 0) {
+            canvas.drawRect(0, mDecorView.getBottom(), getWidth(), getHeight(), mScrimPaint);
+        }
+    }
+
+    /**
+     * Keep the content on a hardware layer only while it moves, and time the frames of the drag.
+     */
+    private void updateDragLayer(int state) {
+        boolean moving = state != ViewDragHelper.STATE_IDLE;
+        int layerType = moving ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE;
+        if (mDecorView.getLayerType() != layerType) {
+            mDecorView.setLayerType(layerType, null);
+        }
+        if (moving) {
+            mFrameTimeRecorder.start();
+        } else {
+            mFrameTimeRecorder.stop();
+        }
+    }
+
     public final void lock() {
         mDragHelper.abort();
         isLocked = true;
@@ -177,378 +270,97 @@ class SlideLayout extends FrameLayout {
         return false;
     }
 
-    private final ViewDragHelper.Callback mLeftCallback = new ViewDragHelper.Callback() {
+    /**
+     * The drag callback for every {@link SlideConfig} position. The content moves along one axis,
+     * from 0 up to the size of the layout in the positive direction, the negative one or both.
+     */
+    private final class DragCallback extends ViewDragHelper.Callback {
+        private final boolean mHorizontal;
+        // Whether the content may slide towards the right or bottom, and towards the left or top
+        private final boolean mPositive;
+        private final boolean mNegative;
 
-        @Override
-        public boolean tryCaptureView(View child, int pointerId) {
-            boolean edgeCase = !mConfig.isEdgeOnly() || mDragHelper.isEdgeTouched(mEdgePosition, pointerId);
-            return child.getId() == mDecorView.getId() && edgeCase;
-        }
-
-        @Override
-        public int clampViewPositionHorizontal(View child, int left, int dx) {
-            return clamp(left, 0, mScreenWidth);
+        DragCallback(boolean horizontal, boolean positive, boolean negative) {
+            mHorizontal = horizontal;
+            mPositive = positive;
+            mNegative = negative;
         }
 
-        @Override
-        public int getViewHorizontalDragRange(View child) {
-            return mScreenWidth;
-        }
-
-        @Override
-        public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            super.onViewReleased(releasedChild, xvel, yvel);
-
-            int left = releasedChild.getLeft();
-            int settleLeft = 0;
-            int leftThreshold = (int) (getWidth() * mConfig.getDistanceThreshold());
-            boolean isVerticalSwiping = Math.abs(yvel) > mConfig.getVelocityThreshold();
-
-            if (xvel > 0) {
-
-                if (Math.abs(xvel) > mConfig.getVelocityThreshold() && !isVerticalSwiping) {
-                    settleLeft = mScreenWidth;
-                } else if (left > leftThreshold) {
-                    settleLeft = mScreenWidth;
-                }
-
-            } else if (xvel == 0) {
-                if (left > leftThreshold) {
-                    settleLeft = mScreenWidth;
-                }
-            }
-
-            mDragHelper.settleCapturedViewAt(settleLeft, releasedChild.getTop());
-            invalidate();
+        private int getRange() {
+            return mHorizontal ? mWidth : mHeight;
         }
 
-        @Override
-        public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) left / (float) mScreenWidth);
-
-            if (mListener != null) mListener.onSlideChange(percent);
-
-            // Update the dimmer alpha
-            applyScrim(percent);
+        private int getOffset(View child) {
+            return mHorizontal ? child.getLeft() : child.getTop();
         }
 
-        @Override
-        public void onViewDragStateChanged(int state) {
-            super.onViewDragStateChanged(state);
-            if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getLeft() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
+        private int clampOffset(int offset) {
+            return clamp(offset, mNegative ? -getRange() : 0, mPositive ? getRange() : 0);
         }
 
-    };
-
-    private final ViewDragHelper.Callback mRightCallback = new ViewDragHelper.Callback() {
         @Override
         public boolean tryCaptureView(View child, int pointerId) {
-            boolean edgeCase = !mConfig.isEdgeOnly() || mDragHelper.isEdgeTouched(mEdgePosition, pointerId);
-            return child.getId() == mDecorView.getId() && edgeCase;
+            boolean edgeCase = !mConfig.isEdgeOnly() || (mHorizontal
+                    ? mDragHelper.isEdgeTouched(mEdgePosition, pointerId) : isEdgeTouched);
+            return child == mDecorView && edgeCase;
         }
 
         @Override
         public int clampViewPositionHorizontal(View child, int left, int dx) {
-            return clamp(left, -mScreenWidth, 0);
-        }
-
-        @Override
-        public int getViewHorizontalDragRange(View child) {
-            return mScreenWidth;
-        }
-
-        @Override
-        public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            super.onViewReleased(releasedChild, xvel, yvel);
-
-            int left = releasedChild.getLeft();
-            int settleLeft = 0;
-            int leftThreshold = (int) (getWidth() * mConfig.getDistanceThreshold());
-            boolean isVerticalSwiping = Math.abs(yvel) > mConfig.getVelocityThreshold();
-
-            if (xvel < 0) {
-
-                if (Math.abs(xvel) > mConfig.getVelocityThreshold() && !isVerticalSwiping) {
-                    settleLeft = -mScreenWidth;
-                } else if (left < -leftThreshold) {
-                    settleLeft = -mScreenWidth;
-                }
-
-            } else if (xvel == 0) {
-                if (left < -leftThreshold) {
-                    settleLeft = -mScreenWidth;
-                }
-            }
-
-            mDragHelper.settleCapturedViewAt(settleLeft, releasedChild.getTop());
-            invalidate();
-        }
-
-        @Override
-        public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) Math.abs(left) / (float) mScreenWidth);
-
-            if (mListener != null) mListener.onSlideChange(percent);
-
-            // Update the dimmer alpha
-            applyScrim(percent);
-        }
-
-        @Override
-        public void onViewDragStateChanged(int state) {
-            super.onViewDragStateChanged(state);
-            if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getLeft() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
-        }
-    };
-
-    private final ViewDragHelper.Callback mTopCallback = new ViewDragHelper.Callback() {
-        @Override
-        public boolean tryCaptureView(View child, int pointerId) {
-            return child.getId() == mDecorView.getId() && (!mConfig.isEdgeOnly() || isEdgeTouched);
+            return mHorizontal ? clampOffset(left) : 0;
         }
 
         @Override
         public int clampViewPositionVertical(View child, int top, int dy) {
-            return clamp(top, 0, mScreenHeight);
-        }
-
-        @Override
-        public int getViewVerticalDragRange(View child) {
-            return mScreenHeight;
-        }
-
-        @Override
-        public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            super.onViewReleased(releasedChild, xvel, yvel);
-
-            int top = releasedChild.getTop();
-            int settleTop = 0;
-            int topThreshold = (int) (getHeight() * mConfig.getDistanceThreshold());
-            boolean isSideSwiping = Math.abs(xvel) > mConfig.getVelocityThreshold();
-
-            if (yvel > 0) {
-                if (Math.abs(yvel) > mConfig.getVelocityThreshold() && !isSideSwiping) {
-                    settleTop = mScreenHeight;
-                } else if (top > topThreshold) {
-                    settleTop = mScreenHeight;
-                }
-            } else if (yvel == 0) {
-                if (top > topThreshold) {
-                    settleTop = mScreenHeight;
-                }
-            }
-
-            mDragHelper.settleCapturedViewAt(releasedChild.getLeft(), settleTop);
-            invalidate();
+            return mHorizontal ? 0 : clampOffset(top);
         }
 
         @Override
-        public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) Math.abs(top) / (float) mScreenHeight);
-
-            if (mListener != null) mListener.onSlideChange(percent);
-
-            // Update the dimmer alpha
-            applyScrim(percent);
-        }
-
-        @Override
-        public void onViewDragStateChanged(int state) {
-            super.onViewDragStateChanged(state);
-            if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getTop() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
-        }
-    };
-
-    private final ViewDragHelper.Callback mBottomCallback = new ViewDragHelper.Callback() {
-        @Override
-        public boolean tryCaptureView(View child, int pointerId) {
-            return child.getId() == mDecorView.getId() && (!mConfig.isEdgeOnly() || isEdgeTouched);
-        }
-
-        @Override
-        public int clampViewPositionVertical(View child, int top, int dy) {
-            return clamp(top, -mScreenHeight, 0);
+        public int getViewHorizontalDragRange(View child) {
+            return mHorizontal ? mWidth : 0;
         }
 
         @Override
         public int getViewVerticalDragRange(View child) {
-            return mScreenHeight;
+            return mHorizontal ? 0 : mHeight;
         }
 
         @Override
         public void onViewReleased(View releasedChild, float xvel, float yvel) {
             super.onViewReleased(releasedChild, xvel, yvel);
 
-            int top = releasedChild.getTop();
-            int settleTop = 0;
-            int topThreshold = (int) (getHeight() * mConfig.getDistanceThreshold());
-            boolean isSideSwiping = Math.abs(xvel) > mConfig.getVelocityThreshold();
-
-            if (yvel < 0) {
-                if (Math.abs(yvel) > mConfig.getVelocityThreshold() && !isSideSwiping) {
-                    settleTop = -mScreenHeight;
-                } else if (top < -topThreshold) {
-                    settleTop = -mScreenHeight;
-                }
-            } else if (yvel == 0) {
-                if (top < -topThreshold) {
-                    settleTop = -mScreenHeight;
-                }
+            int offset = getOffset(releasedChild);
+            float velocity = mHorizontal ? xvel : yvel;
+            float crossVelocity = mHorizontal ? yvel : xvel;
+            int threshold = (int) (getRange() * mConfig.getDistanceThreshold());
+            // A release inside the dead-zone is decided on the offset alone
+            boolean resting = Math.abs(velocity) < mRestingVelocity;
+            boolean isFling = Math.abs(velocity) > mConfig.getVelocityThreshold()
+                    && Math.abs(crossVelocity) <= mConfig.getVelocityThreshold();
+            // Decide on where the content is heading rather than where it was let go
+            int projected = offset + (int) (velocity * FLING_PROJECTION_SECONDS);
+
+            int settle = 0;
+            if (mPositive && (resting ? offset > threshold
+                    : velocity > 0 && (isFling || projected > threshold))) {
+                settle = getRange();
+            } else if (mNegative && (resting ? offset < -threshold
+                    : velocity < 0 && (isFling || projected < -threshold))) {
+                settle = -getRange();
             }
 
-            mDragHelper.settleCapturedViewAt(releasedChild.getLeft(), settleTop);
-            invalidate();
-        }
-
-        @Override
-        public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) Math.abs(top) / (float) mScreenHeight);
-
-            if (mListener != null) mListener.onSlideChange(percent);
-
-            // Update the dimmer alpha
-            applyScrim(percent);
-        }
-
-        @Override
-        public void onViewDragStateChanged(int state) {
-            super.onViewDragStateChanged(state);
-            if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getTop() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
-        }
-    };
-
-    private final ViewDragHelper.Callback mVerticalCallback = new ViewDragHelper.Callback() {
-        @Override
-        public boolean tryCaptureView(View child, int pointerId) {
-            return child.getId() == mDecorView.getId() && (!mConfig.isEdgeOnly() || isEdgeTouched);
-        }
-
-        @Override
-        public int clampViewPositionVertical(View child, int top, int dy) {
-            return clamp(top, -mScreenHeight, mScreenHeight);
-        }
-
-        @Override
-        public int getViewVerticalDragRange(View child) {
-            return mScreenHeight;
-        }
-
-        @Override
-        public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            super.onViewReleased(releasedChild, xvel, yvel);
-
-            int top = releasedChild.getTop();
-            int settleTop = 0;
-            int topThreshold = (int) (getHeight() * mConfig.getDistanceThreshold());
-            boolean isSideSwiping = Math.abs(xvel) > mConfig.getVelocityThreshold();
-
-            if (yvel > 0) {
-
-                // Being slinged down
-                if (Math.abs(yvel) > mConfig.getVelocityThreshold() && !isSideSwiping) {
-                    settleTop = mScreenHeight;
-                } else if (top > topThreshold) {
-                    settleTop = mScreenHeight;
-                }
-
-            } else if (yvel < 0) {
-                // Being slinged up
-                if (Math.abs(yvel) > mConfig.getVelocityThreshold() && !isSideSwiping) {
-                    settleTop = -mScreenHeight;
-                } else if (top < -topThreshold) {
-                    settleTop = -mScreenHeight;
-                }
-
+            if (mHorizontal) {
+                mDragHelper.settleCapturedViewAt(settle, releasedChild.getTop());
             } else {
-
-                if (top > topThreshold) {
-                    settleTop = mScreenHeight;
-                } else if (top < -topThreshold) {
-                    settleTop = -mScreenHeight;
-                }
-
+                mDragHelper.settleCapturedViewAt(releasedChild.getLeft(), settle);
             }
-
-            mDragHelper.settleCapturedViewAt(releasedChild.getLeft(), settleTop);
-            invalidate();
+            ViewCompat.postInvalidateOnAnimation(SlideLayout.this);
         }
 
         @Override
         public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
             super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) Math.abs(top) / (float) mScreenHeight);
+            float percent = 1f - ((float) Math.abs(mHorizontal ? left : top) / (float) getRange());
 
             if (mListener != null) mListener.onSlideChange(percent);
 
@@ -559,119 +371,27 @@ class SlideLayout extends FrameLayout {
         @Override
         public void onViewDragStateChanged(int state) {
             super.onViewDragStateChanged(state);
+            updateDragLayer(state);
             if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getTop() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
-        }
-    };
-
-    private ViewDragHelper.Callback mHorizontalCallback = new ViewDragHelper.Callback() {
-        @Override
-        public boolean tryCaptureView(View child, int pointerId) {
-            boolean edgeCase = !mConfig.isEdgeOnly() || mDragHelper.isEdgeTouched(mEdgePosition, pointerId);
-            return child.getId() == mDecorView.getId() && edgeCase;
-        }
-
-        @Override
-        public int clampViewPositionHorizontal(View child, int left, int dx) {
-            return clamp(left, -mScreenWidth, mScreenWidth);
-        }
-
-        @Override
-        public int getViewHorizontalDragRange(View child) {
-            return mScreenWidth;
-        }
-
-        @Override
-        public void onViewReleased(View releasedChild, float xvel, float yvel) {
-            super.onViewReleased(releasedChild, xvel, yvel);
-
-            int left = releasedChild.getLeft();
-            int settleLeft = 0;
-            int leftThreshold = (int) (getWidth() * mConfig.getDistanceThreshold());
-            boolean isVerticalSwiping = Math.abs(yvel) > mConfig.getVelocityThreshold();
-
-            if (xvel > 0) {
-
-                if (Math.abs(xvel) > mConfig.getVelocityThreshold() && !isVerticalSwiping) {
-                    settleLeft = mScreenWidth;
-                } else if (left > leftThreshold) {
-                    settleLeft = mScreenWidth;
-                }
-
-            } else if (xvel < 0) {
-
-                if (Math.abs(xvel) > mConfig.getVelocityThreshold() && !isVerticalSwiping) {
-                    settleLeft = -mScreenWidth;
-                } else if (left < -leftThreshold) {
-                    settleLeft = -mScreenWidth;
-                }
-
-            } else {
-                if (left > leftThreshold) {
-                    settleLeft = mScreenWidth;
-                } else if (left < -leftThreshold) {
-                    settleLeft = -mScreenWidth;
+            if (state == ViewDragHelper.STATE_IDLE) {
+                if (getOffset(mDecorView) == 0) {
+                    // State Open
+                    if (mListener != null) mListener.onOpened();
+                } else {
+                    // State Closed
+                    if (mListener != null) mListener.onClosed();
                 }
             }
-
-            mDragHelper.settleCapturedViewAt(settleLeft, releasedChild.getTop());
-            invalidate();
-        }
-
-        @Override
-        public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            super.onViewPositionChanged(changedView, left, top, dx, dy);
-            float percent = 1f - ((float) Math.abs(left) / (float) mScreenWidth);
-
-            if (mListener != null) mListener.onSlideChange(percent);
-
-            // Update the dimmer alpha
-            applyScrim(percent);
-        }
-
-        @Override
-        public void onViewDragStateChanged(int state) {
-            super.onViewDragStateChanged(state);
-            if (mListener != null) mListener.onStateChanged(state);
-            switch (state) {
-                case ViewDragHelper.STATE_IDLE:
-                    if (mDecorView.getLeft() == 0) {
-                        // State Open
-                        if (mListener != null) mListener.onOpened();
-                    } else {
-                        // State Closed
-                        if (mListener != null) mListener.onClosed();
-                    }
-                    break;
-                case ViewDragHelper.STATE_DRAGGING:
-
-                    break;
-                case ViewDragHelper.STATE_SETTLING:
-
-                    break;
-            }
         }
-    };
+    }
 
     public void applyScrim(float percent) {
         float alpha = (percent * (mConfig.getScrimStartAlpha() - mConfig.getScrimEndAlpha())) + mConfig.getScrimEndAlpha();
-        mDimView.setAlpha(alpha);
+        int scrimAlpha = Math.round(alpha * 255);
+        if (scrimAlpha != mScrimAlpha) {
+            mScrimAlpha = scrimAlpha;
+            invalidate();
+        }
     }
 
     protected int clamp(int value, int min, int max) {
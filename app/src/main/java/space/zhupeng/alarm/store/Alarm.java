@@ -0,0 +1,199 @@
+package space.zhupeng.alarm.store;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import space.zhupeng.alarm.recurrence.Recurrence;
+import space.zhupeng.alarm.recurrence.ZoneOffsetTable;
+
+/**
+ * A persisted alarm. The repeat flag, week and soundOrVibrator values have the same meaning as
+ * the parameters of {@link space.zhupeng.alarm.AlarmManagerUtil#setAlarm}.
+ */
+public final class Alarm {
+
+    public static final int ONCE = 0;
+    public static final int DAILY = 1;
+    public static final int WEEKLY = 2;
+
+    @IntDef({ONCE, DAILY, WEEKLY})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface RepeatFlag {
+    }
+
+    private int mId;
+    @RepeatFlag
+    private int mFlag = ONCE;
+    private int mHour;
+    private int mMinute;
+    private int mWeek;
+    private String mTips;
+    private int mSoundOrVibrator = 2;
+    private long mTriggerAt;
+    private boolean mExact = true;
+
+    Alarm() {
+    }
+
+    private Alarm(Alarm other) {
+        mId = other.mId;
+        mFlag = other.mFlag;
+        mHour = other.mHour;
+        mMinute = other.mMinute;
+        mWeek = other.mWeek;
+        mTips = other.mTips;
+        mSoundOrVibrator = other.mSoundOrVibrator;
+        mTriggerAt = other.mTriggerAt;
+        mExact = other.mExact;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    @RepeatFlag
+    public int getFlag() {
+        return mFlag;
+    }
+
+    public int getHour() {
+        return mHour;
+    }
+
+    public int getMinute() {
+        return mMinute;
+    }
+
+    public int getWeek() {
+        return mWeek;
+    }
+
+    public String getTips() {
+        return mTips;
+    }
+
+    public int getSoundOrVibrator() {
+        return mSoundOrVibrator;
+    }
+
+    /**
+     * @return the wall clock time in millis at which this alarm fires next
+     */
+    public long getTriggerAt() {
+        return mTriggerAt;
+    }
+
+    /**
+     * Only the store may move an alarm in time, since it keeps its index ordered by this value.
+     */
+    void setTriggerAt(long triggerAt) {
+        mTriggerAt = triggerAt;
+    }
+
+    /**
+     * @return true if the alarm must fire at its trigger time, false if it may be coalesced with
+     * nearby alarms into one wakeup
+     */
+    public boolean isExact() {
+        return mExact;
+    }
+
+    public boolean isRepeating() {
+        return mFlag != ONCE;
+    }
+
+    /**
+     * @return the days of the week this alarm may fire on, see {@link Recurrence}
+     */
+    public int getDayMask() {
+        return mFlag == WEEKLY ? Recurrence.dayMask(mWeek) : Recurrence.EVERY_DAY;
+    }
+
+    /**
+     * @return the first occurrence of this alarm's schedule strictly after {@code after}
+     */
+    public long nextOccurrence(long after, ZoneOffsetTable zone) {
+        return Recurrence.nextOccurrence(mHour, mMinute, getDayMask(), after, zone);
+    }
+
+    /**
+     * @return a builder initialised with the values of this alarm
+     */
+    public Builder buildUpon() {
+        return new Builder()
+                .id(mId)
+                .flag(mFlag)
+                .time(mHour, mMinute)
+                .week(mWeek)
+                .tips(mTips)
+                .soundOrVibrator(mSoundOrVibrator)
+                .triggerAt(mTriggerAt)
+                .exact(mExact);
+    }
+
+    @Override
+    public String toString() {
+        return "Alarm{id=" + mId + ", flag=" + mFlag + ", " + mHour + ":" + mMinute
+                + ", week=" + mWeek + ", triggerAt=" + mTriggerAt + ", exact=" + mExact + "}";
+    }
+
+    public static class Builder {
+
+        private Alarm alarm;
+
+        public Builder() {
+            alarm = new Alarm();
+        }
+
+        public Builder id(int id) {
+            alarm.mId = id;
+            return this;
+        }
+
+        public Builder flag(@RepeatFlag int flag) {
+            alarm.mFlag = flag;
+            return this;
+        }
+
+        public Builder time(int hour, int minute) {
+            alarm.mHour = hour;
+            alarm.mMinute = minute;
+            return this;
+        }
+
+        public Builder week(int week) {
+            alarm.mWeek = week;
+            return this;
+        }
+
+        public Builder tips(String tips) {
+            alarm.mTips = tips;
+            return this;
+        }
+
+        public Builder soundOrVibrator(int soundOrVibrator) {
+            alarm.mSoundOrVibrator = soundOrVibrator;
+            return this;
+        }
+
+        public Builder triggerAt(long triggerAt) {
+            alarm.mTriggerAt = triggerAt;
+            return this;
+        }
+
+        public Builder exact(boolean exact) {
+            alarm.mExact = exact;
+            return this;
+        }
+
+        /**
+         * @return a new alarm with the values set so far, later changes to this builder do not
+         * affect it
+         */
+        public Alarm build() {
+            return new Alarm(alarm);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package space.zhupeng.alarm.store;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * SQLite schema backing the {@link AlarmStore}.
+ */
+class AlarmDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "alarms.db";
+    private static final int DATABASE_VERSION = 3;
+
+    static final String TABLE_ALARMS = "alarms";
+
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_FLAG = "flag";
+    static final String COLUMN_HOUR = "hour";
+    static final String COLUMN_MINUTE = "minute";
+    static final String COLUMN_WEEK = "week";
+    static final String COLUMN_TIPS = "tips";
+    static final String COLUMN_SOUND_OR_VIBRATOR = "sound_or_vibrator";
+    static final String COLUMN_TRIGGER_AT = "trigger_at";
+    static final String COLUMN_EXACT = "exact";
+
+    static final String TABLE_METRICS = "metrics";
+
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_ALARM_ID = "alarm_id";
+    static final String COLUMN_VALUE = "value";
+    static final String COLUMN_RECORDED_AT = "recorded_at";
+
+    static final String[] ALARM_COLUMNS = {
+            COLUMN_ID, COLUMN_FLAG, COLUMN_HOUR, COLUMN_MINUTE, COLUMN_WEEK, COLUMN_TIPS,
+            COLUMN_SOUND_OR_VIBRATOR, COLUMN_TRIGGER_AT, COLUMN_EXACT
+    };
+
+    private static AlarmDatabase sInstance;
+
+    private AlarmDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    static synchronized AlarmDatabase get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlarmDatabase(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ALARMS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_FLAG + " INTEGER NOT NULL, "
+                + COLUMN_HOUR + " INTEGER NOT NULL, "
+                + COLUMN_MINUTE + " INTEGER NOT NULL, "
+                + COLUMN_WEEK + " INTEGER NOT NULL, "
+                + COLUMN_TIPS + " TEXT, "
+                + COLUMN_SOUND_OR_VIBRATOR + " INTEGER NOT NULL, "
+                + COLUMN_TRIGGER_AT + " INTEGER NOT NULL, "
+                + COLUMN_EXACT + " INTEGER NOT NULL DEFAULT 1)");
+        db.execSQL("CREATE INDEX idx_alarms_trigger_at ON " + TABLE_ALARMS
+                + " (" + COLUMN_TRIGGER_AT + ")");
+        createMetricsTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN "
+                    + COLUMN_EXACT + " INTEGER NOT NULL DEFAULT 1");
+        }
+        if (oldVersion < 3) {
+            createMetricsTable(db);
+        }
+    }
+
+    private static void createMetricsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_METRICS + " ("
+                + COLUMN_NAME + " TEXT NOT NULL, "
+                + COLUMN_ALARM_ID + " INTEGER NOT NULL, "
+                + COLUMN_VALUE + " INTEGER NOT NULL, "
+                + COLUMN_RECORDED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_metrics_name ON " + TABLE_METRICS
+                + " (" + COLUMN_NAME + ", " + COLUMN_RECORDED_AT + ")");
+    }
+}
@@ -0,0 +1,97 @@
+package space.zhupeng.alarm.store;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_ALARM_ID;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_NAME;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_RECORDED_AT;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_VALUE;
+import static space.zhupeng.alarm.store.AlarmDatabase.TABLE_METRICS;
+
+/**
+ * Per delivery measurements, kept in the alarm database so they survive process death and can
+ * be compared across days. Only the latest {@link #MAX_VALUES_PER_NAME} values of each name are
+ * kept.
+ */
+public final class AlarmMetrics {
+
+    /**
+     * Millis between the scheduled trigger time of an alarm and the moment it was delivered.
+     */
+    public static final String FIRE_LATENCY = "fire_latency";
+
+    /**
+     * Micros the main thread spent on delivering one alarm broadcast, including the launch of the
+     * alarm screen. Recorded with an alarm id of -1 when nothing was due.
+     */
+    public static final String MAIN_THREAD_TIME = "main_thread_time";
+
+    /**
+     * Millis between receiving the alarm broadcast and starting the alarm sound.
+     */
+    public static final String TIME_TO_FIRST_SOUND = "time_to_first_sound";
+
+    /**
+     * Millis between receiving the alarm broadcast and the first frame of the alarm screen being
+     * drawn.
+     */
+    public static final String TIME_TO_FIRST_FRAME = "time_to_first_frame";
+
+    /**
+     * Millis between the alarm screen being created and its first frame being drawn. The budget is
+     * two frames, about 33 ms.
+     */
+    public static final String CREATE_TO_FIRST_FRAME = "create_to_first_frame";
+
+    /**
+     * The number of values kept per name, older ones are deleted as new ones are recorded.
+     */
+    public static final int MAX_VALUES_PER_NAME = 200;
+
+    private AlarmMetrics() {
+    }
+
+    public static void record(Context context, @NonNull String name, int alarmId, long value) {
+        ContentValues values = new ContentValues(4);
+        values.put(COLUMN_NAME, name);
+        values.put(COLUMN_ALARM_ID, alarmId);
+        values.put(COLUMN_VALUE, value);
+        values.put(COLUMN_RECORDED_AT, System.currentTimeMillis());
+        SQLiteDatabase db = AlarmDatabase.get(context).getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.insert(TABLE_METRICS, null, values);
+            db.delete(TABLE_METRICS, COLUMN_NAME + " = ? AND rowid NOT IN (SELECT rowid FROM "
+                            + TABLE_METRICS + " WHERE " + COLUMN_NAME + " = ? ORDER BY "
+                            + COLUMN_RECORDED_AT + " DESC LIMIT " + MAX_VALUES_PER_NAME + ")",
+                    new String[]{name, name});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @param limit the maximum number of values to return
+     * @return the most recent values recorded under the name, newest first
+     */
+    @NonNull
+    public static long[] getRecent(Context context, @NonNull String name, int limit) {
+        Cursor cursor = AlarmDatabase.get(context).getReadableDatabase().query(TABLE_METRICS,
+                new String[]{COLUMN_VALUE}, COLUMN_NAME + " = ?", new String[]{name},
+                null, null, COLUMN_RECORDED_AT + " DESC", String.valueOf(limit));
+        try {
+            long[] values = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                values[i] = cursor.getLong(0);
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package space.zhupeng.alarm.store;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Read-only, memory-mapped snapshot of the alarms in a fixed-width binary layout, ordered by
+ * trigger time. The {@link AlarmStore} rewrites it whenever its alarms change. Reading a field of a
+ * record is a single absolute read from the mapped buffer and never allocates, so a freshly started
+ * process can look at the next alarm without opening the database.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * header   magic int, version int, count int, labels offset int
+ * record   id int, trigger at long, hour byte, minute byte, day mask byte, flags byte,
+ *          week byte, 3 bytes padding, label offset int, label length int, 4 bytes padding
+ * labels   UTF-8 bytes of all tips, referenced by offset and length from the records
+ * </pre>
+ * The flags byte holds the repeat flag in bits 0-1, soundOrVibrator in bits 2-3 and the exact
+ * flag in bit 4.
+ */
+public final class AlarmRecordFile {
+
+    private static final String TAG = "AlarmRecordFile";
+    private static final String FILE_NAME = "alarms.rec";
+
+    private static final int MAGIC = 0x416c524d;
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    private static final int OFFSET_ID = 0;
+    private static final int OFFSET_TRIGGER_AT = 4;
+    private static final int OFFSET_HOUR = 12;
+    private static final int OFFSET_MINUTE = 13;
+    private static final int OFFSET_DAY_MASK = 14;
+    private static final int OFFSET_FLAGS = 15;
+    private static final int OFFSET_WEEK = 16;
+    private static final int OFFSET_LABEL_OFFSET = 20;
+    private static final int OFFSET_LABEL_LENGTH = 24;
+
+    private static final int FLAG_REPEAT_MASK = 0x03;
+    private static final int FLAG_SOUND_SHIFT = 2;
+    private static final int FLAG_SOUND_MASK = 0x03;
+    private static final int FLAG_EXACT = 0x10;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AlarmRecordFile EMPTY = new AlarmRecordFile(ByteBuffer.allocate(0), 0, 0);
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mLabelsOffset;
+
+    private AlarmRecordFile(ByteBuffer buffer, int count, int labelsOffset) {
+        mBuffer = buffer;
+        mCount = count;
+        mLabelsOffset = labelsOffset;
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Map the current snapshot. The mapping stays valid, and unchanged, when the store writes a
+     * newer snapshot; map again to see it.
+     *
+     * @return the records, empty if there is no readable snapshot
+     */
+    @NonNull
+    public static AlarmRecordFile map(Context context) {
+        return map(getFile(context));
+    }
+
+    @NonNull
+    static AlarmRecordFile map(File file) {
+        if (!file.exists()) return EMPTY;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                return EMPTY;
+            }
+            int count = buffer.getInt(8);
+            int labelsOffset = buffer.getInt(12);
+            if (count < 0 || labelsOffset != HEADER_SIZE + count * RECORD_SIZE
+                    || labelsOffset > buffer.capacity()) {
+                return EMPTY;
+            }
+            return new AlarmRecordFile(buffer, count, labelsOffset);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to map " + file, e);
+            return EMPTY;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the snapshot with the given alarms, which must be ordered by trigger time. The new
+     * snapshot is written to a temporary file first and renamed over the old one, so a reader
+     * never sees a partial file.
+     */
+    static void write(Context context, Collection<Alarm> alarms) {
+        write(getFile(context), alarms);
+    }
+
+    static void write(File file, Collection<Alarm> alarms) {
+        byte[][] labels = new byte[alarms.size()][];
+        int labelsSize = 0;
+        int i = 0;
+        for (Alarm alarm : alarms) {
+            labels[i] = alarm.getTips() == null ? null : alarm.getTips().getBytes(UTF_8);
+            if (labels[i] != null) labelsSize += labels[i].length;
+            i++;
+        }
+
+        int labelsOffset = HEADER_SIZE + alarms.size() * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(labelsOffset + labelsSize);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, alarms.size());
+        buffer.putInt(12, labelsOffset);
+
+        int record = HEADER_SIZE;
+        int label = labelsOffset;
+        i = 0;
+        for (Alarm alarm : alarms) {
+            int flags = (alarm.getFlag() & FLAG_REPEAT_MASK)
+                    | (alarm.getSoundOrVibrator() & FLAG_SOUND_MASK) << FLAG_SOUND_SHIFT
+                    | (alarm.isExact() ? FLAG_EXACT : 0);
+            buffer.putInt(record + OFFSET_ID, alarm.getId());
+            buffer.putLong(record + OFFSET_TRIGGER_AT, alarm.getTriggerAt());
+            buffer.put(record + OFFSET_HOUR, (byte) alarm.getHour());
+            buffer.put(record + OFFSET_MINUTE, (byte) alarm.getMinute());
+            buffer.put(record + OFFSET_DAY_MASK, (byte) alarm.getDayMask());
+            buffer.put(record + OFFSET_FLAGS, (byte) flags);
+            buffer.put(record + OFFSET_WEEK, (byte) alarm.getWeek());
+            int length = labels[i] == null ? -1 : labels[i].length;
+            buffer.putInt(record + OFFSET_LABEL_OFFSET, label);
+            buffer.putInt(record + OFFSET_LABEL_LENGTH, length);
+            if (length > 0) {
+                buffer.position(label);
+                buffer.put(labels[i]);
+                label += length;
+            }
+            record += RECORD_SIZE;
+            i++;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(buffer.array());
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Unable to replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + tmp, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getId(int index) {
+        return mBuffer.getInt(offset(index) + OFFSET_ID);
+    }
+
+    public long getTriggerAt(int index) {
+        return mBuffer.getLong(offset(index) + OFFSET_TRIGGER_AT);
+    }
+
+    public int getHour(int index) {
+        return mBuffer.get(offset(index) + OFFSET_HOUR);
+    }
+
+    public int getMinute(int index) {
+        return mBuffer.get(offset(index) + OFFSET_MINUTE);
+    }
+
+    public int getDayMask(int index) {
+        return mBuffer.get(offset(index) + OFFSET_DAY_MASK) & 0xff;
+    }
+
+    public int getWeek(int index) {
+        return mBuffer.get(offset(index) + OFFSET_WEEK);
+    }
+
+    @Alarm.RepeatFlag
+    public int getFlag(int index) {
+        return mBuffer.get(offset(index) + OFFSET_FLAGS) & FLAG_REPEAT_MASK;
+    }
+
+    public int getSoundOrVibrator(int index) {
+        return (mBuffer.get(offset(index) + OFFSET_FLAGS) >> FLAG_SOUND_SHIFT) & FLAG_SOUND_MASK;
+    }
+
+    public boolean isExact(int index) {
+        return (mBuffer.get(offset(index) + OFFSET_FLAGS) & FLAG_EXACT) != 0;
+    }
+
+    /**
+     * @return the offset of the label bytes of the record within the mapped file
+     */
+    public int getLabelOffset(int index) {
+        return mBuffer.getInt(offset(index) + OFFSET_LABEL_OFFSET);
+    }
+
+    /**
+     * @return the length in bytes of the label of the record, -1 if it has none
+     */
+    public int getLabelLength(int index) {
+        return mBuffer.getInt(offset(index) + OFFSET_LABEL_LENGTH);
+    }
+
+    /**
+     * Decode the label of a record. Unlike the other accessors this allocates the string.
+     */
+    public String getLabel(int index) {
+        int length = getLabelLength(index);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        ByteBuffer label = mBuffer.duplicate();
+        label.position(getLabelOffset(index));
+        label.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @return the index of the record with the given id, -1 if there is none
+     */
+    public int indexOf(int id) {
+        for (int i = 0; i < mCount; i++) {
+            if (getId(i) == id) return i;
+        }
+        return -1;
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mCount);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
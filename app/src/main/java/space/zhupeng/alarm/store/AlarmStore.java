@@ -0,0 +1,344 @@
+package space.zhupeng.alarm.store;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import space.zhupeng.alarm.recurrence.ZoneOffsetTable;
+
+import static space.zhupeng.alarm.store.AlarmDatabase.ALARM_COLUMNS;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_EXACT;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_FLAG;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_HOUR;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_ID;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_MINUTE;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_SOUND_OR_VIBRATOR;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_TIPS;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_TRIGGER_AT;
+import static space.zhupeng.alarm.store.AlarmDatabase.COLUMN_WEEK;
+import static space.zhupeng.alarm.store.AlarmDatabase.TABLE_ALARMS;
+
+/**
+ * Persistent alarm repository. Every alarm is written through to SQLite, and an in-memory index
+ * ordered by trigger time is kept alongside it, so finding the next alarm to arm is O(log n) and
+ * only the earliest entry ever needs a registration with the system AlarmManager. The index is
+ * also mirrored into an {@link AlarmRecordFile} for readers which should not load the database.
+ * <p>
+ * Every change rewrites and syncs that file, so changes made together should be wrapped in
+ * {@link #beginBatch()} and {@link #endBatch()}, and none of them belong on the main thread.
+ */
+public final class AlarmStore {
+
+    private static final Comparator<Alarm> TRIGGER_ORDER = new Comparator<Alarm>() {
+        @Override
+        public int compare(Alarm a, Alarm b) {
+            if (a.getTriggerAt() != b.getTriggerAt()) {
+                return a.getTriggerAt() < b.getTriggerAt() ? -1 : 1;
+            }
+            return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+        }
+    };
+
+    private static AlarmStore sInstance;
+
+    private final Context mContext;
+    private final AlarmDatabase mDatabase;
+    private final SparseArray<Alarm> mAlarmsById = new SparseArray<>();
+    private final TreeSet<Alarm> mAlarmsByTrigger = new TreeSet<>(TRIGGER_ORDER);
+    private boolean mLoaded;
+    private int mBatchDepth;
+    private boolean mRecordsDirty;
+
+    private AlarmStore(Context context) {
+        mContext = context.getApplicationContext();
+        mDatabase = AlarmDatabase.get(context);
+    }
+
+    public static synchronized AlarmStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlarmStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Defer the {@link AlarmRecordFile} update of the following changes to the matching
+     * {@link #endBatch()}, so the whole batch rewrites the file once. Batches may be nested.
+     */
+    public synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    public synchronized void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() without beginBatch()");
+        }
+        mBatchDepth--;
+        if (mRecordsDirty) writeRecords();
+    }
+
+    /**
+     * Insert the alarm, replacing any alarm with the same id.
+     */
+    public synchronized void put(@NonNull Alarm alarm) {
+        ensureLoaded();
+        unindex(alarm.getId());
+        mDatabase.getWritableDatabase().insertWithOnConflict(TABLE_ALARMS, null,
+                toContentValues(alarm), SQLiteDatabase.CONFLICT_REPLACE);
+        index(alarm);
+        writeRecords();
+    }
+
+    /**
+     * Insert all alarms in a single transaction, replacing any alarms with the same ids.
+     */
+    public synchronized void putAll(@NonNull Collection<Alarm> alarms) {
+        ensureLoaded();
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Alarm alarm : alarms) {
+                db.insertWithOnConflict(TABLE_ALARMS, null, toContentValues(alarm),
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (Alarm alarm : alarms) {
+            unindex(alarm.getId());
+            index(alarm);
+        }
+        writeRecords();
+    }
+
+    @Nullable
+    public synchronized Alarm remove(int id) {
+        ensureLoaded();
+        Alarm removed = unindex(id);
+        if (removed != null) {
+            mDatabase.getWritableDatabase().delete(TABLE_ALARMS, COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(id)});
+            writeRecords();
+        }
+        return removed;
+    }
+
+    /**
+     * Move an alarm to a new trigger time, keeping the index ordered.
+     */
+    public synchronized void reschedule(@NonNull Alarm alarm, long triggerAt) {
+        ensureLoaded();
+        unindex(alarm.getId());
+        alarm.setTriggerAt(triggerAt);
+        ContentValues values = new ContentValues(1);
+        values.put(COLUMN_TRIGGER_AT, triggerAt);
+        mDatabase.getWritableDatabase().update(TABLE_ALARMS, values, COLUMN_ID + " = ?",
+                new String[]{String.valueOf(alarm.getId())});
+        index(alarm);
+        writeRecords();
+    }
+
+    /**
+     * Recompute the trigger time of every stored alarm in one streaming pass over the table, e.g.
+     * after a reboot or a change of the wall clock or time zone. Alarms which are already due
+     * keep their trigger time so they are delivered right away; every other alarm is moved to its
+     * next occurrence after {@code now} in {@code zone}. The in-memory index is rebuilt from the
+     * same pass and all updates are written in a single transaction.
+     *
+     * @return the number of alarms
+     */
+    public synchronized int recomputeAll(long now, ZoneOffsetTable zone) {
+        mAlarmsById.clear();
+        mAlarmsByTrigger.clear();
+        mLoaded = false;
+
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ALARMS + " SET "
+                + COLUMN_TRIGGER_AT + " = ? WHERE " + COLUMN_ID + " = ?");
+        db.beginTransaction();
+        Cursor cursor = db.query(TABLE_ALARMS, ALARM_COLUMNS, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Alarm alarm = fromCursor(cursor);
+                if (alarm.getTriggerAt() > now) {
+                    long triggerAt = alarm.nextOccurrence(now, zone);
+                    if (triggerAt != alarm.getTriggerAt()) {
+                        alarm.setTriggerAt(triggerAt);
+                        update.bindLong(1, triggerAt);
+                        update.bindLong(2, alarm.getId());
+                        update.executeUpdateDelete();
+                    }
+                }
+                index(alarm);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            cursor.close();
+            db.endTransaction();
+            update.close();
+        }
+        mLoaded = true;
+        writeRecords();
+        return mAlarmsById.size();
+    }
+
+    @Nullable
+    public synchronized Alarm get(int id) {
+        ensureLoaded();
+        return mAlarmsById.get(id);
+    }
+
+    /**
+     * @return the alarm with the earliest trigger time, or null if there are no alarms
+     */
+    @Nullable
+    public synchronized Alarm peekNext() {
+        ensureLoaded();
+        return mAlarmsByTrigger.isEmpty() ? null : mAlarmsByTrigger.first();
+    }
+
+    /**
+     * @return the alarms whose trigger time is at or before the given time, earliest first
+     */
+    @NonNull
+    public synchronized List<Alarm> getDue(long now) {
+        ensureLoaded();
+        List<Alarm> due = new ArrayList<>();
+        for (Alarm alarm : mAlarmsByTrigger) {
+            if (alarm.getTriggerAt() > now) break;
+            due.add(alarm);
+        }
+        return due;
+    }
+
+    /**
+     * Collect the alarms to deliver in one wakeup: every alarm due at {@code now}, plus the
+     * non-exact alarms due within {@code tolerance} after it.
+     *
+     * @return the alarms to deliver, earliest first
+     */
+    @NonNull
+    public synchronized List<Alarm> getDue(long now, long tolerance) {
+        ensureLoaded();
+        List<Alarm> due = new ArrayList<>();
+        long until = now + tolerance;
+        for (Alarm alarm : mAlarmsByTrigger) {
+            if (alarm.getTriggerAt() > until) break;
+            if (alarm.getTriggerAt() <= now || !alarm.isExact()) {
+                due.add(alarm);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @return the earliest exact alarm whose trigger time is at or before the given time, or null
+     */
+    @Nullable
+    public synchronized Alarm peekNextExact(long until) {
+        ensureLoaded();
+        for (Alarm alarm : mAlarmsByTrigger) {
+            if (alarm.getTriggerAt() > until) break;
+            if (alarm.isExact()) return alarm;
+        }
+        return null;
+    }
+
+    /**
+     * @return all alarms ordered by trigger time
+     */
+    @NonNull
+    public synchronized List<Alarm> getAll() {
+        ensureLoaded();
+        return new ArrayList<>(mAlarmsByTrigger);
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return mAlarmsById.size();
+    }
+
+    private void index(Alarm alarm) {
+        mAlarmsById.put(alarm.getId(), alarm);
+        mAlarmsByTrigger.add(alarm);
+    }
+
+    private Alarm unindex(int id) {
+        Alarm old = mAlarmsById.get(id);
+        if (old != null) {
+            mAlarmsById.remove(id);
+            mAlarmsByTrigger.remove(old);
+        }
+        return old;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) return;
+
+        Cursor cursor = mDatabase.getReadableDatabase().query(TABLE_ALARMS, ALARM_COLUMNS,
+                null, null, null, null, COLUMN_TRIGGER_AT);
+        try {
+            while (cursor.moveToNext()) {
+                index(fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        mLoaded = true;
+        if (!AlarmRecordFile.getFile(mContext).exists()) {
+            writeRecords();
+        }
+    }
+
+    /**
+     * Mirror the index into the memory-mapped {@link AlarmRecordFile}, or at the end of the
+     * current batch.
+     */
+    private void writeRecords() {
+        if (mBatchDepth > 0) {
+            mRecordsDirty = true;
+            return;
+        }
+        mRecordsDirty = false;
+        AlarmRecordFile.write(mContext, mAlarmsByTrigger);
+    }
+
+    private static Alarm fromCursor(Cursor cursor) {
+        return new Alarm.Builder()
+                .id(cursor.getInt(0))
+                .flag(cursor.getInt(1))
+                .time(cursor.getInt(2), cursor.getInt(3))
+                .week(cursor.getInt(4))
+                .tips(cursor.getString(5))
+                .soundOrVibrator(cursor.getInt(6))
+                .triggerAt(cursor.getLong(7))
+                .exact(cursor.getInt(8) != 0)
+                .build();
+    }
+
+    private static ContentValues toContentValues(Alarm alarm) {
+        ContentValues values = new ContentValues(ALARM_COLUMNS.length);
+        values.put(COLUMN_ID, alarm.getId());
+        values.put(COLUMN_FLAG, alarm.getFlag());
+        values.put(COLUMN_HOUR, alarm.getHour());
+        values.put(COLUMN_MINUTE, alarm.getMinute());
+        values.put(COLUMN_WEEK, alarm.getWeek());
+        values.put(COLUMN_TIPS, alarm.getTips());
+        values.put(COLUMN_SOUND_OR_VIBRATOR, alarm.getSoundOrVibrator());
+        values.put(COLUMN_TRIGGER_AT, alarm.getTriggerAt());
+        values.put(COLUMN_EXACT, alarm.isExact());
+        return values;
+    }
+}
@@ -4,42 +4,55 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import java.util.Arrays;
-import java.util.TreeSet;
-
 import static space.zhupeng.alarm.time.TimePickerDialog.HOUR_INDEX;
 import static space.zhupeng.alarm.time.TimePickerDialog.MINUTE_INDEX;
 
 /**
  * An implementation of TimepointLimiter which implements the most common ways to restrict Timepoints
  * in a TimePickerDialog
+ * <p>
+ * The selectable and disabled times are compiled into {@link MinuteBitmap}s as they are set, so
+ * range checks are bit probes rather than set lookups.
  */
 
 class DefaultTimepointLimiter implements TimepointLimiter {
-    private TreeSet<Timepoint> mSelectableTimes = new TreeSet<>();
-    private TreeSet<Timepoint> mDisabledTimes = new TreeSet<>();
-    private TreeSet<Timepoint> exclusiveSelectableTimes = new TreeSet<>();
     private Timepoint mMinTime;
     private Timepoint mMaxTime;
 
+    private final MinuteBitmap mSelectable = new MinuteBitmap();
+    private final MinuteBitmap mDisabled = new MinuteBitmap();
+    // The selectable times which are not disabled.
+    private final MinuteBitmap mExclusive = new MinuteBitmap();
+
+    // Nearest valid minute of the day for every minute of the day, indexed by
+    // [type + 1][resolution] and rebuilt whenever the limits change. Null while there are no
+    // limits, as every time then rounds to itself.
+    private short[][][] mNearest;
+
     DefaultTimepointLimiter() {
+        buildNearest();
     }
 
     @SuppressWarnings("WeakerAccess")
     public DefaultTimepointLimiter(Parcel in) {
-        mMinTime = in.readParcelable(Timepoint.class.getClassLoader());
-        mMaxTime = in.readParcelable(Timepoint.class.getClassLoader());
-        mSelectableTimes.addAll(Arrays.asList((Timepoint[]) in.readParcelableArray(Timepoint[].class.getClassLoader())));
-        mDisabledTimes.addAll(Arrays.asList((Timepoint[]) in.readParcelableArray(Timepoint[].class.getClassLoader())));
-        exclusiveSelectableTimes = getExclusiveSelectableTimes(mSelectableTimes, mDisabledTimes);
+        mMinTime = PackedTime.toTimepoint(in.readInt());
+        mMaxTime = PackedTime.toTimepoint(in.readInt());
+        mSelectable.readFromParcel(in);
+        mDisabled.readFromParcel(in);
+        mExclusive.setDifference(mSelectable, mDisabled);
+        buildNearest();
     }
 
+    /**
+     * The bounds are written as packed times and the selectable and disabled times as the words
+     * of their bitmaps, so the parcel has the same small size however many times are set.
+     */
     @Override
     public void writeToParcel(Parcel out, int flags) {
-        out.writeParcelable(mMinTime, flags);
-        out.writeParcelable(mMaxTime, flags);
-        out.writeParcelableArray((Timepoint[]) mSelectableTimes.toArray(), flags);
-        out.writeParcelableArray((Timepoint[]) mDisabledTimes.toArray(), flags);
+        out.writeInt(PackedTime.of(mMinTime));
+        out.writeInt(PackedTime.of(mMaxTime));
+        mSelectable.writeToParcel(out);
+        mDisabled.writeToParcel(out);
     }
 
     @Override
@@ -62,200 +75,253 @@ class DefaultTimepointLimiter implements TimepointLimiter {
         if (mMaxTime != null && minTime.compareTo(mMaxTime) > 0)
             throw new IllegalArgumentException("Minimum time must be smaller than the maximum time");
         mMinTime = minTime;
+        buildNearest();
     }
 
     void setMaxTime(@NonNull Timepoint maxTime) {
         if (mMinTime != null && maxTime.compareTo(mMinTime) < 0)
             throw new IllegalArgumentException("Maximum time must be greater than the minimum time");
         mMaxTime = maxTime;
+        buildNearest();
     }
 
     void setSelectableTimes(@NonNull Timepoint[] selectableTimes) {
-        mSelectableTimes.addAll(Arrays.asList(selectableTimes));
-        exclusiveSelectableTimes = getExclusiveSelectableTimes(mSelectableTimes, mDisabledTimes);
+        for (Timepoint time : selectableTimes) mSelectable.set(toMinute(time.toSeconds()));
+        mExclusive.setDifference(mSelectable, mDisabled);
+        buildNearest();
     }
 
     void setDisabledTimes(@NonNull Timepoint[] disabledTimes) {
-        mDisabledTimes.addAll(Arrays.asList(disabledTimes));
-        exclusiveSelectableTimes = getExclusiveSelectableTimes(mSelectableTimes, mDisabledTimes);
+        for (Timepoint time : disabledTimes) mDisabled.set(toMinute(time.toSeconds()));
+        mExclusive.setDifference(mSelectable, mDisabled);
+        buildNearest();
     }
 
-    private TreeSet<Timepoint> getExclusiveSelectableTimes(TreeSet<Timepoint> selectable, TreeSet<Timepoint> disabled) {
-        TreeSet<Timepoint> output = (TreeSet<Timepoint>) selectable.clone();
-        output.removeAll(disabled);
-        return output;
+    /**
+     * Make every hourInterval-th hour selectable, and within those every minuteInterval-th minute.
+     */
+    void setTimeInterval(int hourInterval, int minuteInterval) {
+        for (int hour = 0; hour < 24; hour += hourInterval) {
+            for (int minute = 0; minute < 60; minute += minuteInterval) {
+                mSelectable.set(hour * 60 + minute);
+            }
+        }
+        mExclusive.setDifference(mSelectable, mDisabled);
+        buildNearest();
     }
 
     @Override
     public boolean isOutOfRange(@Nullable Timepoint current, int index, @Timepoint.TYPE int resolution) {
-        if (current == null) return false;
+        return isOutOfRange(PackedTime.of(current), index, resolution);
+    }
+
+    /**
+     * Packed counterpart of {@link #isOutOfRange(Timepoint, int, int)}, see {@link PackedTime}.
+     */
+    public boolean isOutOfRange(int current, int index, @Timepoint.TYPE int resolution) {
+        if (current == PackedTime.NONE) return false;
 
         if (index == HOUR_INDEX) {
-            if (mMinTime != null && mMinTime.getHour() > current.getHour()) return true;
+            int hour = PackedTime.getHour(current);
+            if (mMinTime != null && mMinTime.getHour() > hour) return true;
 
-            if (mMaxTime != null && mMaxTime.getHour() + 1 <= current.getHour()) return true;
+            if (mMaxTime != null && mMaxTime.getHour() + 1 <= hour) return true;
 
-            if (!exclusiveSelectableTimes.isEmpty()) {
-                Timepoint ceil = exclusiveSelectableTimes.ceiling(current);
-                Timepoint floor = exclusiveSelectableTimes.floor(current);
-                return !(current.equals(ceil, Timepoint.HOUR) || current.equals(floor, Timepoint.HOUR));
-            }
+            if (!mExclusive.isEmpty()) return !mExclusive.hasHour(hour);
 
-            if (!mDisabledTimes.isEmpty() && resolution == Timepoint.HOUR) {
-                Timepoint ceil = mDisabledTimes.ceiling(current);
-                Timepoint floor = mDisabledTimes.floor(current);
-                return current.equals(ceil, Timepoint.HOUR) || current.equals(floor, Timepoint.HOUR);
-            }
+            if (!mDisabled.isEmpty() && resolution == Timepoint.HOUR) return mDisabled.hasHour(hour);
 
             return false;
         } else if (index == MINUTE_INDEX) {
-            if (mMinTime != null) {
-                Timepoint roundedMin = new Timepoint(mMinTime.getHour(), mMinTime.getMinute());
-                if (roundedMin.compareTo(current) > 0) return true;
-            }
+            if (mMinTime != null && mMinTime.toSeconds() > current) return true;
 
-            if (mMaxTime != null) {
-                Timepoint roundedMax = new Timepoint(mMaxTime.getHour(), mMaxTime.getMinute());
-                if (roundedMax.compareTo(current) < 0) return true;
-            }
+            if (mMaxTime != null && mMaxTime.toSeconds() < current) return true;
 
-            if (!exclusiveSelectableTimes.isEmpty()) {
-                Timepoint ceil = exclusiveSelectableTimes.ceiling(current);
-                Timepoint floor = exclusiveSelectableTimes.floor(current);
-                return !(current.equals(ceil, Timepoint.MINUTE) || current.equals(floor, Timepoint.MINUTE));
-            }
+            if (!mExclusive.isEmpty()) return !mExclusive.get(toMinute(current));
 
-            if (!mDisabledTimes.isEmpty() && resolution == Timepoint.MINUTE) {
-                Timepoint ceil = mDisabledTimes.ceiling(current);
-                Timepoint floor = mDisabledTimes.floor(current);
-                boolean ceilExclude = current.equals(ceil, Timepoint.MINUTE);
-                boolean floorExclude = current.equals(floor, Timepoint.MINUTE);
-                return ceilExclude || floorExclude;
-            }
+            if (!mDisabled.isEmpty() && resolution == Timepoint.MINUTE) return mDisabled.get(toMinute(current));
 
             return false;
         } else return isOutOfRange(current);
     }
 
     public boolean isOutOfRange(@NonNull Timepoint current) {
-        if (mMinTime != null && mMinTime.compareTo(current) > 0) return true;
+        return isOutOfRange(current.toSeconds());
+    }
 
-        if (mMaxTime != null && mMaxTime.compareTo(current) < 0) return true;
+    public boolean isOutOfRange(int current) {
+        if (mMinTime != null && mMinTime.toSeconds() > current) return true;
 
-        if (!exclusiveSelectableTimes.isEmpty()) return !exclusiveSelectableTimes.contains(current);
+        if (mMaxTime != null && mMaxTime.toSeconds() < current) return true;
 
-        return mDisabledTimes.contains(current);
+        if (!mExclusive.isEmpty()) return !mExclusive.get(toMinute(current));
+
+        return mDisabled.get(toMinute(current));
     }
 
     @Override
     public Timepoint roundToNearest(@NonNull Timepoint time, @Timepoint.TYPE int type, @Timepoint.TYPE int resolution) {
-        if (mMinTime != null && mMinTime.compareTo(time) > 0) return mMinTime;
-
-        if (mMaxTime != null && mMaxTime.compareTo(time) < 0) return mMaxTime;
-
-        if (!exclusiveSelectableTimes.isEmpty()) {
-            Timepoint floor = exclusiveSelectableTimes.floor(time);
-            Timepoint ceil = exclusiveSelectableTimes.ceiling(time);
-
-            if (floor == null || ceil == null) {
-                Timepoint t = floor == null ? ceil : floor;
-                if (t.getHour() != time.getHour()) return time;
-                if (type == Timepoint.MINUTE && t.getMinute() != time.getMinute()) return time;
-                return t;
-            }
+        int rounded = roundToNearest(time.toSeconds(), type, resolution);
+        return rounded == time.toSeconds() ? time : PackedTime.toTimepoint(rounded);
+    }
 
-            if (type == Timepoint.HOUR) {
-                if (floor.getHour() != time.getHour() && ceil.getHour() == time.getHour())
-                    return ceil;
-                if (floor.getHour() == time.getHour() && ceil.getHour() != time.getHour())
-                    return floor;
-                if (floor.getHour() != time.getHour() && ceil.getHour() != time.getHour())
-                    return time;
-            }
+    /**
+     * Packed counterpart of {@link #roundToNearest(Timepoint, int, int)}, see {@link PackedTime}.
+     * Whole minutes are answered from a table, see {@link #buildNearest()}.
+     */
+    public int roundToNearest(int time, @Timepoint.TYPE int type, @Timepoint.TYPE int resolution) {
+        if (mNearest == null || time % PackedTime.SECONDS_PER_MINUTE != 0
+                || type < -1 || type > Timepoint.MINUTE
+                || resolution < Timepoint.HOUR || resolution > Timepoint.MINUTE) {
+            return computeNearest(time, type, resolution);
+        }
+        return mNearest[type + 1][resolution][toMinute(time)] * PackedTime.SECONDS_PER_MINUTE;
+    }
 
-            if (type == Timepoint.MINUTE) {
-                if (floor.getHour() != time.getHour() && ceil.getHour() != time.getHour())
-                    return time;
-                if (floor.getHour() != time.getHour() && ceil.getHour() == time.getHour()) {
-                    return ceil.getMinute() == time.getMinute() ? ceil : time;
-                }
-                if (floor.getHour() == time.getHour() && ceil.getHour() != time.getHour()) {
-                    return floor.getMinute() == time.getMinute() ? floor : time;
+    /**
+     * Round every minute of the day for every type and resolution while the limiter is being
+     * configured, so a lookup while the user drags is a single array read. A limiter without
+     * limits, like the one every dialog starts with, needs no tables.
+     */
+    private void buildNearest() {
+        if (mMinTime == null && mMaxTime == null && mSelectable.isEmpty() && mDisabled.isEmpty()) {
+            mNearest = null;
+            return;
+        }
+        if (mNearest == null) mNearest = new short[3][2][MinuteBitmap.MINUTES_PER_DAY];
+        for (int type = -1; type <= Timepoint.MINUTE; type++) {
+            for (int resolution = Timepoint.HOUR; resolution <= Timepoint.MINUTE; resolution++) {
+                short[] nearest = mNearest[type + 1][resolution];
+                for (int minute = 0; minute < nearest.length; minute++) {
+                    nearest[minute] = (short) toMinute(
+                            computeNearest(minute * PackedTime.SECONDS_PER_MINUTE, type, resolution));
                 }
-                if (floor.getMinute() != time.getMinute() && ceil.getMinute() == time.getMinute())
-                    return ceil;
-                if (floor.getMinute() == time.getMinute() && ceil.getMinute() != time.getMinute())
-                    return floor;
-                if (floor.getMinute() != time.getMinute() && ceil.getMinute() != time.getMinute())
-                    return time;
             }
+        }
+    }
 
-            int floorDist = Math.abs(time.compareTo(floor));
-            int ceilDist = Math.abs(time.compareTo(ceil));
+    private int computeNearest(int time, @Timepoint.TYPE int type, @Timepoint.TYPE int resolution) {
+        if (mMinTime != null && mMinTime.toSeconds() > time) return mMinTime.toSeconds();
 
-            return floorDist < ceilDist ? floor : ceil;
+        if (mMaxTime != null && mMaxTime.toSeconds() < time) return mMaxTime.toSeconds();
+
+        if (!mExclusive.isEmpty()) {
+            return roundBetween(time, floor(mExclusive, time), ceiling(mExclusive, time), type);
         }
 
-        if (!mDisabledTimes.isEmpty()) {
+        if (!mDisabled.isEmpty()) {
             // if type matches resolution: cannot change anything, return input
             if (type == resolution) return time;
 
-            if (resolution == Timepoint.MINUTE) {
-                Timepoint ceil = mDisabledTimes.ceiling(time);
-                Timepoint floor = mDisabledTimes.floor(time);
-                boolean ceilDisabled = time.equals(ceil, Timepoint.MINUTE);
-                boolean floorDisabled = time.equals(floor, Timepoint.MINUTE);
-
-                if (ceilDisabled || floorDisabled)
+            if (resolution == Timepoint.MINUTE || resolution == Timepoint.HOUR) {
+                if (isDisabled(time, resolution))
                     return searchValidTimePoint(time, type, resolution);
                 return time;
             }
+        }
 
-            if (resolution == Timepoint.HOUR) {
-                Timepoint ceil = mDisabledTimes.ceiling(time);
-                Timepoint floor = mDisabledTimes.floor(time);
-                boolean ceilDisabled = time.equals(ceil, Timepoint.HOUR);
-                boolean floorDisabled = time.equals(floor, Timepoint.HOUR);
+        return time;
+    }
 
-                if (ceilDisabled || floorDisabled)
-                    return searchValidTimePoint(time, type, resolution);
+    /**
+     * Round a time to one of the selectable times around it.
+     *
+     * @param floor the closest selectable time at or before the time, or {@link PackedTime#NONE}
+     * @param ceil  the closest selectable time at or after the time, or {@link PackedTime#NONE}
+     */
+    static int roundBetween(int time, int floor, int ceil, @Timepoint.TYPE int type) {
+        int hour = PackedTime.getHour(time);
+        int minute = PackedTime.getMinute(time);
+
+        if (floor == PackedTime.NONE || ceil == PackedTime.NONE) {
+            int t = floor == PackedTime.NONE ? ceil : floor;
+            if (PackedTime.getHour(t) != hour) return time;
+            if (type == Timepoint.MINUTE && PackedTime.getMinute(t) != minute) return time;
+            return t;
+        }
+
+        int floorHour = PackedTime.getHour(floor);
+        int ceilHour = PackedTime.getHour(ceil);
+        int floorMinute = PackedTime.getMinute(floor);
+        int ceilMinute = PackedTime.getMinute(ceil);
+
+        if (type == Timepoint.HOUR) {
+            if (floorHour != hour && ceilHour == hour)
+                return ceil;
+            if (floorHour == hour && ceilHour != hour)
+                return floor;
+            if (floorHour != hour && ceilHour != hour)
+                return time;
+        }
+
+        if (type == Timepoint.MINUTE) {
+            if (floorHour != hour && ceilHour != hour)
                 return time;
+            if (floorHour != hour && ceilHour == hour) {
+                return ceilMinute == minute ? ceil : time;
+            }
+            if (floorHour == hour && ceilHour != hour) {
+                return floorMinute == minute ? floor : time;
             }
+            if (floorMinute != minute && ceilMinute == minute)
+                return ceil;
+            if (floorMinute == minute && ceilMinute != minute)
+                return floor;
+            if (floorMinute != minute && ceilMinute != minute)
+                return time;
         }
 
-        return time;
+        int floorDist = Math.abs(time - floor);
+        int ceilDist = Math.abs(time - ceil);
+
+        return floorDist < ceilDist ? floor : ceil;
     }
 
-    private Timepoint searchValidTimePoint(@NonNull Timepoint time, @Timepoint.TYPE int type, @Timepoint.TYPE int resolution) {
-        Timepoint forward = new Timepoint(time);
-        Timepoint backward = new Timepoint(time);
+    private int searchValidTimePoint(int time, @Timepoint.TYPE int type, @Timepoint.TYPE int resolution) {
+        int forward = time;
+        int backward = time;
+        int value = PackedTime.get(time, type);
         int iteration = 0;
         int resolutionMultiplier = 1;
         if (resolution == Timepoint.MINUTE) resolutionMultiplier = 60;
 
         while (iteration < 24 * resolutionMultiplier) {
             iteration++;
-            forward.add(resolution, 1);
-            backward.add(resolution, -1);
-
-            if (forward.get(type) == time.get(type)) {
-                Timepoint forwardCeil = mDisabledTimes.ceiling(forward);
-                Timepoint forwardFloor = mDisabledTimes.floor(forward);
-                if (!forward.equals(forwardCeil, resolution) && !forward.equals(forwardFloor, resolution))
-                    return forward;
-            }
+            forward = PackedTime.add(forward, resolution, 1);
+            backward = PackedTime.add(backward, resolution, -1);
 
-            if (backward.get(type) == time.get(type)) {
-                Timepoint backwardCeil = mDisabledTimes.ceiling(backward);
-                Timepoint backwardFloor = mDisabledTimes.floor(backward);
-                if (!backward.equals(backwardCeil, resolution) && !backward.equals(backwardFloor, resolution))
-                    return backward;
-            }
+            if (PackedTime.get(forward, type) == value && !isDisabled(forward, resolution))
+                return forward;
 
-            if (backward.get(type) != time.get(type) && forward.get(type) != time.get(type))
+            if (PackedTime.get(backward, type) == value && !isDisabled(backward, resolution))
+                return backward;
+
+            if (PackedTime.get(backward, type) != value && PackedTime.get(forward, type) != value)
                 break;
         }
         // If this step is reached, the user has disabled all timepoints
         return time;
     }
+
+    /**
+     * @return true if a disabled time equals the given time up to the resolution
+     */
+    private boolean isDisabled(int time, @Timepoint.TYPE int resolution) {
+        if (resolution == Timepoint.MINUTE) return mDisabled.get(toMinute(time));
+        return mDisabled.hasHour(PackedTime.getHour(time));
+    }
+
+    private static int toMinute(int time) {
+        return time / PackedTime.SECONDS_PER_MINUTE;
+    }
+
+    private static int ceiling(MinuteBitmap times, int time) {
+        int minute = times.next((time + PackedTime.SECONDS_PER_MINUTE - 1) / PackedTime.SECONDS_PER_MINUTE);
+        return minute == -1 ? PackedTime.NONE : minute * PackedTime.SECONDS_PER_MINUTE;
+    }
+
+    private static int floor(MinuteBitmap times, int time) {
+        int minute = times.previous(toMinute(time));
+        return minute == -1 ? PackedTime.NONE : minute * PackedTime.SECONDS_PER_MINUTE;
+    }
 }
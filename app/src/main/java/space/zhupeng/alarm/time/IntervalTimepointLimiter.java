@@ -0,0 +1,311 @@
+package space.zhupeng.alarm.time;
+
+import android.os.Parcel;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import static space.zhupeng.alarm.time.TimePickerDialog.HOUR_INDEX;
+import static space.zhupeng.alarm.time.TimePickerDialog.MINUTE_INDEX;
+
+/**
+ * A TimepointLimiter whose selectable times are a sorted list of stepped ranges, e.g. every 5
+ * minutes from 08:00 to 18:00. Memory is proportional to the number of ranges rather than the
+ * number of selectable minutes, and lookups are a binary search over the ranges.
+ * <p>
+ * Limiters are immutable and can be combined with {@link #union}, {@link #intersect} and
+ * {@link #subtract}:
+ * <pre>
+ * IntervalTimepointLimiter limiter = IntervalTimepointLimiter
+ *         .range(new Timepoint(8, 0), new Timepoint(18, 0), 5)
+ *         .subtract(IntervalTimepointLimiter.range(new Timepoint(12, 0), new Timepoint(13, 0), 1));
+ * dialog.setTimepointLimiter(limiter);
+ * </pre>
+ * Like {@link DefaultTimepointLimiter}, rounding never wraps around midnight, and when no time is
+ * selectable at all rounding leaves the time unchanged; {@link #isOutOfRange} still reports it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IntervalTimepointLimiter implements TimepointLimiter {
+
+    // Range i holds the minutes of the day mStarts[i] + k * mSteps[i] up to mEnds[i] inclusive,
+    // where mEnds[i] itself is selectable. Ranges are sorted and do not overlap.
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final int[] mSteps;
+
+    private IntervalTimepointLimiter(int[] starts, int[] ends, int[] steps) {
+        mStarts = starts;
+        mEnds = ends;
+        mSteps = steps;
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public IntervalTimepointLimiter(Parcel in) {
+        mStarts = in.createIntArray();
+        mEnds = in.createIntArray();
+        mSteps = in.createIntArray();
+    }
+
+    /**
+     * @return a limiter where nothing is selectable, every time is out of range and
+     * {@link #roundToNearest} returns the time it is given
+     */
+    public static IntervalTimepointLimiter none() {
+        return new IntervalTimepointLimiter(new int[0], new int[0], new int[0]);
+    }
+
+    /**
+     * @return a limiter where every minute of the day is selectable
+     */
+    public static IntervalTimepointLimiter all() {
+        return range(new Timepoint(0, 0), new Timepoint(23, 59), 1);
+    }
+
+    /**
+     * A range whose end is before its start wraps around midnight, e.g. 22:00 to 06:00 every 30
+     * minutes selects 22:00, 22:30 ... 23:30, 00:00 ... 06:00. The steps are counted from the start
+     * across midnight.
+     *
+     * @param from        the first selectable time
+     * @param to          the last time which may be selectable, inclusive
+     * @param stepMinutes the number of minutes between two selectable times
+     * @return a limiter where from and every stepMinutes after it up to to are selectable
+     */
+    public static IntervalTimepointLimiter range(@NonNull Timepoint from, @NonNull Timepoint to,
+                                                 @IntRange(from = 1) int stepMinutes) {
+        if (stepMinutes < 1)
+            throw new IllegalArgumentException("Step must be at least one minute");
+
+        int start = toMinute(from.toSeconds());
+        int end = toMinute(to.toSeconds());
+        if (start <= end) {
+            return new IntervalTimepointLimiter(new int[]{start},
+                    new int[]{alignEnd(start, end, stepMinutes)}, new int[]{start == end ? 1 : stepMinutes});
+        }
+
+        // Split at midnight into the part after midnight, which comes first in the day, and the
+        // part up to midnight.
+        int lastMinute = MinuteBitmap.MINUTES_PER_DAY - 1;
+        int beforeEnd = alignEnd(start, lastMinute, stepMinutes);
+        int afterStart = beforeEnd + stepMinutes - MinuteBitmap.MINUTES_PER_DAY;
+        int beforeStep = start == beforeEnd ? 1 : stepMinutes;
+        if (afterStart > end) {
+            return new IntervalTimepointLimiter(new int[]{start}, new int[]{beforeEnd},
+                    new int[]{beforeStep});
+        }
+        int afterEnd = alignEnd(afterStart, end, stepMinutes);
+        return new IntervalTimepointLimiter(new int[]{afterStart, start}, new int[]{afterEnd, beforeEnd},
+                new int[]{afterStart == afterEnd ? 1 : stepMinutes, beforeStep});
+    }
+
+    /**
+     * @return the last minute at or before end which is a whole number of steps after start
+     */
+    private static int alignEnd(int start, int end, int step) {
+        return end - (end - start) % step;
+    }
+
+    /**
+     * @return a limiter where the times selectable in this or the other limiter are selectable
+     */
+    public IntervalTimepointLimiter union(@NonNull IntervalTimepointLimiter other) {
+        MinuteBitmap result = new MinuteBitmap();
+        result.setUnion(toBitmap(), other.toBitmap());
+        return fromBitmap(result);
+    }
+
+    /**
+     * @return a limiter where the times selectable in both this and the other limiter are selectable
+     */
+    public IntervalTimepointLimiter intersect(@NonNull IntervalTimepointLimiter other) {
+        MinuteBitmap result = new MinuteBitmap();
+        result.setIntersection(toBitmap(), other.toBitmap());
+        return fromBitmap(result);
+    }
+
+    /**
+     * @return a limiter where the times selectable in this but not in the other limiter are selectable
+     */
+    public IntervalTimepointLimiter subtract(@NonNull IntervalTimepointLimiter other) {
+        MinuteBitmap result = new MinuteBitmap();
+        result.setDifference(toBitmap(), other.toBitmap());
+        return fromBitmap(result);
+    }
+
+    /**
+     * @return the number of stepped ranges this limiter is made of
+     */
+    public int getRangeCount() {
+        return mStarts.length;
+    }
+
+    public boolean isSelectable(@NonNull Timepoint time) {
+        return isSelectable(time.toSeconds());
+    }
+
+    /**
+     * @param time a packed time, see {@link PackedTime}
+     */
+    public boolean isSelectable(int time) {
+        if (time % PackedTime.SECONDS_PER_MINUTE != 0) return false;
+        int minute = toMinute(time);
+        int i = indexOfRange(minute);
+        return i != -1 && minute >= mStarts[i] && (minute - mStarts[i]) % mSteps[i] == 0;
+    }
+
+    @Override
+    public boolean isOutOfRange(@Nullable Timepoint point, int index, @Timepoint.TYPE int resolution) {
+        if (point == null) return false;
+
+        int time = point.toSeconds();
+        if (index == HOUR_INDEX) {
+            int hourStart = PackedTime.round(time, Timepoint.HOUR);
+            int ceil = ceiling(hourStart);
+            return ceil == PackedTime.NONE || ceil >= hourStart + PackedTime.SECONDS_PER_HOUR;
+        } else if (index == MINUTE_INDEX) {
+            return !isSelectable(PackedTime.round(time, Timepoint.MINUTE));
+        }
+        return !isSelectable(time);
+    }
+
+    @NonNull
+    @Override
+    public Timepoint roundToNearest(@NonNull Timepoint time, @Timepoint.TYPE int type,
+                                    @Timepoint.TYPE int resolution) {
+        if (mStarts.length == 0) return time;
+
+        int seconds = time.toSeconds();
+        int rounded = DefaultTimepointLimiter.roundBetween(seconds, floor(seconds), ceiling(seconds), type);
+        return rounded == seconds ? time : PackedTime.toTimepoint(rounded);
+    }
+
+    /**
+     * @return the first selectable time at or after the given packed time, or {@link PackedTime#NONE}
+     */
+    private int ceiling(int time) {
+        int minute = (time + PackedTime.SECONDS_PER_MINUTE - 1) / PackedTime.SECONDS_PER_MINUTE;
+        int i = indexOfRange(minute);
+        if (i == -1) return PackedTime.NONE;
+        if (minute <= mStarts[i]) return mStarts[i] * PackedTime.SECONDS_PER_MINUTE;
+        int steps = (minute - mStarts[i] + mSteps[i] - 1) / mSteps[i];
+        return (mStarts[i] + steps * mSteps[i]) * PackedTime.SECONDS_PER_MINUTE;
+    }
+
+    /**
+     * @return the last selectable time at or before the given packed time, or {@link PackedTime#NONE}
+     */
+    private int floor(int time) {
+        int minute = toMinute(time);
+        int i = indexOfRange(minute);
+        if (i == -1 || minute < mStarts[i]) i = (i == -1 ? mStarts.length : i) - 1;
+        if (i < 0) return PackedTime.NONE;
+        if (minute >= mEnds[i]) return mEnds[i] * PackedTime.SECONDS_PER_MINUTE;
+        int steps = (minute - mStarts[i]) / mSteps[i];
+        return (mStarts[i] + steps * mSteps[i]) * PackedTime.SECONDS_PER_MINUTE;
+    }
+
+    /**
+     * @return the index of the first range ending at or after the minute, -1 if there is none
+     */
+    private int indexOfRange(int minute) {
+        int lo = 0;
+        int hi = mEnds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mEnds[mid] < minute) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == mEnds.length ? -1 : lo;
+    }
+
+    private MinuteBitmap toBitmap() {
+        MinuteBitmap bitmap = new MinuteBitmap();
+        for (int i = 0; i < mStarts.length; i++) {
+            for (int minute = mStarts[i]; minute <= mEnds[i]; minute += mSteps[i]) {
+                bitmap.set(minute);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Encode the minutes of the bitmap as the fewest ranges a single ascending pass finds: every
+     * range is extended for as long as the next minute keeps its step.
+     */
+    private static IntervalTimepointLimiter fromBitmap(MinuteBitmap bitmap) {
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int[] steps = new int[8];
+        int count = 0;
+
+        int minute = bitmap.next(0);
+        while (minute != -1) {
+            int start = minute;
+            int end = minute;
+            int step = 1;
+            int next = bitmap.next(minute + 1);
+            if (next != -1) {
+                step = next - start;
+                end = next;
+                next = bitmap.next(next + 1);
+                while (next != -1 && next - end == step) {
+                    end = next;
+                    next = bitmap.next(next + 1);
+                }
+            }
+            if (count == starts.length) {
+                starts = grow(starts);
+                ends = grow(ends);
+                steps = grow(steps);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            steps[count] = step;
+            count++;
+            minute = next;
+        }
+        return new IntervalTimepointLimiter(trim(starts, count), trim(ends, count), trim(steps, count));
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static int[] trim(int[] array, int length) {
+        int[] trimmed = new int[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private static int toMinute(int time) {
+        return time / PackedTime.SECONDS_PER_MINUTE;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeIntArray(mStarts);
+        out.writeIntArray(mEnds);
+        out.writeIntArray(mSteps);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<IntervalTimepointLimiter> CREATOR
+            = new Creator<IntervalTimepointLimiter>() {
+        public IntervalTimepointLimiter createFromParcel(Parcel in) {
+            return new IntervalTimepointLimiter(in);
+        }
+
+        public IntervalTimepointLimiter[] newArray(int size) {
+            return new IntervalTimepointLimiter[size];
+        }
+    };
+}
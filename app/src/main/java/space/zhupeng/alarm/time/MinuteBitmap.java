@@ -0,0 +1,126 @@
+package space.zhupeng.alarm.time;
+
+import android.os.Parcel;
+
+/**
+ * A set of minutes of the day, one bit per minute, with a summary bit per hour telling whether
+ * the hour contains any minute of the set. Membership tests at minute or hour resolution are a
+ * single bit probe.
+ */
+final class MinuteBitmap {
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+    static final int WORDS = (MINUTES_PER_DAY + 63) / 64;
+
+    private final long[] mWords = new long[WORDS];
+    private int mHours;
+
+    MinuteBitmap() {
+    }
+
+    boolean get(int minute) {
+        return (mWords[minute >> 6] & (1L << minute)) != 0;
+    }
+
+    /**
+     * @return true if any minute of the hour is in the set
+     */
+    boolean hasHour(int hour) {
+        return (mHours & (1 << hour)) != 0;
+    }
+
+    boolean isEmpty() {
+        return mHours == 0;
+    }
+
+    void set(int minute) {
+        mWords[minute >> 6] |= 1L << minute;
+        mHours |= 1 << (minute / 60);
+    }
+
+    /**
+     * Make this set the minutes in {@code a} or {@code b}.
+     */
+    void setUnion(MinuteBitmap a, MinuteBitmap b) {
+        for (int i = 0; i < WORDS; i++) {
+            mWords[i] = a.mWords[i] | b.mWords[i];
+        }
+        updateHours(0, 24);
+    }
+
+    /**
+     * Make this set the minutes in both {@code a} and {@code b}.
+     */
+    void setIntersection(MinuteBitmap a, MinuteBitmap b) {
+        for (int i = 0; i < WORDS; i++) {
+            mWords[i] = a.mWords[i] & b.mWords[i];
+        }
+        updateHours(0, 24);
+    }
+
+    /**
+     * Make this set {@code a} without the minutes of {@code b}.
+     */
+    void setDifference(MinuteBitmap a, MinuteBitmap b) {
+        for (int i = 0; i < WORDS; i++) {
+            mWords[i] = a.mWords[i] & ~b.mWords[i];
+        }
+        updateHours(0, 24);
+    }
+
+    /**
+     * @return the first minute of the set at or after the given minute, -1 if there is none
+     */
+    int next(int minute) {
+        if (minute >= MINUTES_PER_DAY) return -1;
+        if (minute < 0) minute = 0;
+        int index = minute >> 6;
+        long word = mWords[index] & (-1L << minute);
+        while (true) {
+            if (word != 0) return (index << 6) + Long.numberOfTrailingZeros(word);
+            if (++index == WORDS) return -1;
+            word = mWords[index];
+        }
+    }
+
+    /**
+     * @return the last minute of the set at or before the given minute, -1 if there is none
+     */
+    int previous(int minute) {
+        if (minute < 0) return -1;
+        if (minute >= MINUTES_PER_DAY) minute = MINUTES_PER_DAY - 1;
+        int index = minute >> 6;
+        long word = mWords[index] & (-1L >>> (63 - (minute & 63)));
+        while (true) {
+            if (word != 0) return (index << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (--index < 0) return -1;
+            word = mWords[index];
+        }
+    }
+
+    void writeToParcel(Parcel out) {
+        out.writeLongArray(mWords);
+    }
+
+    /**
+     * Replace the minutes of this set with the ones written by {@link #writeToParcel(Parcel)}.
+     */
+    void readFromParcel(Parcel in) {
+        in.readLongArray(mWords);
+        updateHours(0, 24);
+    }
+
+    /**
+     * Recompute the summary bits of the hours [fromHour, toHour) after their words changed.
+     */
+    private void updateHours(int fromHour, int toHour) {
+        for (int hour = fromHour; hour < toHour; hour++) {
+            int first = next(hour * 60);
+            if (first != -1 && first < (hour + 1) * 60) {
+                mHours |= 1 << hour;
+            } else {
+                mHours &= ~(1 << hour);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package space.zhupeng.alarm.time;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Static helpers for a time of day packed into a single int, the number of seconds since
+ * midnight. This is the allocation free counterpart of {@link Timepoint}: the picker and the
+ * limiters pass packed times around in their hot paths and only create a Timepoint at the API
+ * boundary.
+ * <p>
+ * {@link #NONE} stands for the absence of a time, where the Timepoint API uses null.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PackedTime {
+
+    public static final int NONE = -1;
+
+    public static final int SECONDS_PER_MINUTE = 60;
+    public static final int SECONDS_PER_HOUR = 3600;
+    public static final int SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
+
+    private PackedTime() {
+    }
+
+    /**
+     * Fields are modulo'd into their correct ranges, just like the {@link Timepoint} constructor.
+     */
+    public static int of(@IntRange(from = 0, to = 23) int hour,
+                         @IntRange(from = 0, to = 59) int minute) {
+        return SECONDS_PER_HOUR * (hour % 24) + SECONDS_PER_MINUTE * (minute % 60);
+    }
+
+    /**
+     * @return the packed time, or {@link #NONE} if time is null
+     */
+    public static int of(@Nullable Timepoint time) {
+        return time == null ? NONE : time.toSeconds();
+    }
+
+    @Nullable
+    public static Timepoint toTimepoint(int time) {
+        return time == NONE ? null : new Timepoint(getHour(time), getMinute(time));
+    }
+
+    @IntRange(from = 0, to = 23)
+    public static int getHour(int time) {
+        return time / SECONDS_PER_HOUR;
+    }
+
+    @IntRange(from = 0, to = 59)
+    public static int getMinute(int time) {
+        return (time % SECONDS_PER_HOUR) / SECONDS_PER_MINUTE;
+    }
+
+    public static int get(int time, @Timepoint.TYPE int type) {
+        return type == Timepoint.MINUTE ? getMinute(time) : getHour(time);
+    }
+
+    public static int withHour(int time, @IntRange(from = 0, to = 23) int hour) {
+        return of(hour, getMinute(time));
+    }
+
+    public static int withMinute(int time, @IntRange(from = 0, to = 59) int minute) {
+        return of(getHour(time), minute);
+    }
+
+    /**
+     * Add a number of hours or minutes, wrapping around midnight in both directions.
+     */
+    public static int add(int time, @Timepoint.TYPE int type, int value) {
+        int seconds = type == Timepoint.MINUTE ? SECONDS_PER_MINUTE : SECONDS_PER_HOUR;
+        int result = (time + (value % (SECONDS_PER_DAY / seconds)) * seconds) % SECONDS_PER_DAY;
+        return result < 0 ? result + SECONDS_PER_DAY : result;
+    }
+
+    public static int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * @return true if both times are equal up to the given resolution, the counterpart of
+     * {@link Timepoint#equals(Timepoint, int)}
+     */
+    public static boolean equals(int a, int b, @Timepoint.TYPE int resolution) {
+        if (a == NONE || b == NONE) return false;
+        if (resolution == Timepoint.MINUTE) {
+            return a / SECONDS_PER_MINUTE == b / SECONDS_PER_MINUTE;
+        }
+        return a / SECONDS_PER_HOUR == b / SECONDS_PER_HOUR;
+    }
+
+    /**
+     * Truncate the time to the given resolution.
+     */
+    public static int round(int time, @Timepoint.TYPE int resolution) {
+        int seconds = resolution == Timepoint.MINUTE ? SECONDS_PER_MINUTE : SECONDS_PER_HOUR;
+        return time - time % seconds;
+    }
+
+    /**
+     * @param min the lower bound, inclusive, or {@link #NONE} for no bound
+     * @param max the upper bound, inclusive, or {@link #NONE} for no bound
+     */
+    public static boolean isInRange(int time, int min, int max) {
+        return (min == NONE || time >= min) && (max == NONE || time <= max);
+    }
+
+    @NonNull
+    public static String toString(int time) {
+        return time == NONE ? "none" : getHour(time) + ":" + getMinute(time);
+    }
+}
@@ -3,6 +3,7 @@ package space.zhupeng.alarm.time;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
@@ -22,9 +23,12 @@ import android.view.accessibility.AccessibilityManager;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.FrameLayout;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Locale;
 
+import space.zhupeng.alarm.perf.FrameTimeRecorder;
+
 public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
     private static final String TAG = "RadialPickerLayout";
 
@@ -37,12 +41,14 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
     private static final int HOUR_INDEX = TimePickerDialog.HOUR_INDEX;
     private static final int MINUTE_INDEX = TimePickerDialog.MINUTE_INDEX;
 
-    private Timepoint mLastValueSelected;
+    // Times are packed as seconds of the day, see PackedTime, so touch handling never allocates.
+    private int mLastValueSelected;
 
     private TimePickerController mController;
     private OnValueSelectedListener mListener;
     private boolean mTimeInitialized;
-    private Timepoint mCurrentTime;
+    private boolean mPrepared;
+    private int mCurrentTime;
     private int mCurrentItemShowing;
 
     private CircleView mCircleView;
@@ -53,6 +59,10 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
     private View mGrayBox;
 
     private int[] mSnapPrefer30sMap;
+    // Valid times for every degree, indexed by [picker][inner circle][force visible value], see
+    // getValidTimeFromDegrees. mSnapContexts holds the field of the current time each was built for.
+    private final int[][][][] mSnapTables = new int[2][2][2][];
+    private final int[][][] mSnapContexts = new int[2][2][2];
     private boolean mInputEnabled;
     private boolean mDoingMove;
     private boolean mDoingTouch;
@@ -63,6 +73,7 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
 
     private AnimatorSet mTransition;
     private Handler mHandler = new Handler();
+    private final FrameTimeRecorder mFrameTimeRecorder = new FrameTimeRecorder("drag");
 
     public interface OnValueSelectedListener {
         void onValueSelected(Timepoint newTime);
@@ -97,7 +108,7 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
         // Prepare mapping to snap touchable degrees to selectable degrees.
         preparePrefer30sMap();
 
-        mLastValueSelected = null;
+        mLastValueSelected = PackedTime.NONE;
 
         mInputEnabled = true;
 
@@ -135,18 +146,44 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
         mCircleView.initialize(context, mController);
         mCircleView.invalidate();
 
-        // Create the selection validators
+        prepare(context);
+        mHourRadialTextsView.setSelection(initialTime.getHour());
+        mHourRadialTextsView.invalidate();
+        mMinuteRadialTextsView.setSelection(initialTime.getMinute());
+        mMinuteRadialTextsView.invalidate();
+
+        // Initialize the currently-selected hour and minute.
+        mCurrentTime = initialTime.toSeconds();
+        int hourDegrees = (initialTime.getHour() % 12) * HOUR_VALUE_TO_DEGREES_STEP_SIZE;
+        mHourRadialSelectorView.initialize(context, mController, true, true,
+                hourDegrees, isHourInnerCircle(initialTime.getHour()));
+        int minuteDegrees = initialTime.getMinute() * MINUTE_VALUE_TO_DEGREES_STEP_SIZE;
+        mMinuteRadialSelectorView.initialize(context, mController, false, false,
+                minuteDegrees, false);
+
+        mTimeInitialized = true;
+    }
+
+    /**
+     * Set up the numbers, which do not depend on the dialog, and load their typefaces.
+     * {@link TimePickerDialog#prewarm} calls this ahead of time, otherwise {@link #initialize}
+     * does.
+     */
+    void prepare(Context context) {
+        if (mPrepared) return;
+
+        // Create the selection validators, they ask the controller only once it is initialized
         RadialTextsView.SelectionValidator minuteValidator = new RadialTextsView.SelectionValidator() {
             @Override
             public boolean isValidSelection(int selection) {
-                Timepoint newTime = new Timepoint(mCurrentTime.getHour(), selection);
+                int newTime = PackedTime.withMinute(mCurrentTime, selection);
                 return !mController.isOutOfRange(newTime, MINUTE_INDEX);
             }
         };
         RadialTextsView.SelectionValidator hourValidator = new RadialTextsView.SelectionValidator() {
             @Override
             public boolean isValidSelection(int selection) {
-                Timepoint newTime = new Timepoint(selection, mCurrentTime.getMinute());
+                int newTime = PackedTime.withHour(mCurrentTime, selection);
                 return !mController.isOutOfRange(newTime, HOUR_INDEX);
             }
         };
@@ -163,35 +200,45 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
             innerHoursTexts[i] = String.format(Locale.getDefault(), "%d", hours[i]);
             minutesTexts[i] = String.format(Locale.getDefault(), "%02d", minutes[i]);
         }
-        mHourRadialTextsView.initialize(context, hoursTexts, innerHoursTexts, mController, hourValidator, true);
-        mHourRadialTextsView.setSelection(initialTime.getHour());
-        mHourRadialTextsView.invalidate();
-        mMinuteRadialTextsView.initialize(context, minutesTexts, null, mController, minuteValidator, false);
-        mMinuteRadialTextsView.setSelection(initialTime.getMinute());
-        mMinuteRadialTextsView.invalidate();
+        mHourRadialTextsView.initialize(context, hoursTexts, hours_24, innerHoursTexts, hours,
+                hourValidator, true);
+        mMinuteRadialTextsView.initialize(context, minutesTexts, minutes, null, null,
+                minuteValidator, false);
+        mPrepared = true;
+    }
 
-        // Initialize the currently-selected hour and minute.
-        mCurrentTime = initialTime;
-        int hourDegrees = (initialTime.getHour() % 12) * HOUR_VALUE_TO_DEGREES_STEP_SIZE;
-        mHourRadialSelectorView.initialize(context, mController, true, true,
-                hourDegrees, isHourInnerCircle(initialTime.getHour()));
-        int minuteDegrees = initialTime.getMinute() * MINUTE_VALUE_TO_DEGREES_STEP_SIZE;
-        mMinuteRadialSelectorView.initialize(context, mController, false, false,
-                minuteDegrees, false);
+    public void setTime(Timepoint time) {
+        setItem(HOUR_INDEX, time.toSeconds());
+    }
 
-        mTimeInitialized = true;
+    /**
+     * Redraw the numbers after the limiter of the controller changed.
+     */
+    public void onLimiterChanged() {
+        clearSnapTables();
+        mHourRadialTextsView.invalidateValidity();
+        mMinuteRadialTextsView.invalidateValidity();
+        mHourRadialTextsView.invalidate();
+        mMinuteRadialTextsView.invalidate();
     }
 
-    public void setTime(Timepoint time) {
-        setItem(HOUR_INDEX, time);
+    /**
+     * The validators of the numbers depend on the current time, so they are asked again whenever
+     * it changes.
+     */
+    private void setCurrentTime(int time) {
+        if (time == mCurrentTime) return;
+        mCurrentTime = time;
+        mHourRadialTextsView.invalidateValidity();
+        mMinuteRadialTextsView.invalidateValidity();
     }
 
     /**
      * Set either the hour, the minute or the second. Will set the internal value, and set the selection.
      */
-    private void setItem(int index, Timepoint time) {
+    private void setItem(int index, int time) {
         time = roundToValidTime(time, index);
-        mCurrentTime = time;
+        setCurrentTime(time);
         reselectSelector(time, false, index);
     }
 
@@ -206,15 +253,15 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
     }
 
     public int getHours() {
-        return mCurrentTime.getHour();
+        return PackedTime.getHour(mCurrentTime);
     }
 
     public int getMinutes() {
-        return mCurrentTime.getMinute();
+        return PackedTime.getMinute(mCurrentTime);
     }
 
     public Timepoint getTime() {
-        return mCurrentTime;
+        return PackedTime.toTimepoint(mCurrentTime);
     }
 
     /**
@@ -225,9 +272,9 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
         int currentIndex = getCurrentItemShowing();
         switch (currentIndex) {
             case HOUR_INDEX:
-                return mCurrentTime.getHour();
+                return PackedTime.getHour(mCurrentTime);
             case MINUTE_INDEX:
-                return mCurrentTime.getMinute();
+                return PackedTime.getMinute(mCurrentTime);
             default:
                 return -1;
         }
@@ -337,11 +384,12 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
     /**
      * Snap the input to a selectable value
      *
-     * @param newSelection       Timepoint - Time which should be rounded
+     * @param newSelection       int - Packed time which should be rounded
      * @param currentItemShowing int - The index of the current view
-     * @return Timepoint - the rounded value
+     * @return int - the rounded packed value
      */
-    private Timepoint roundToValidTime(Timepoint newSelection, int currentItemShowing) {
+    private int roundToValidTime(int newSelection, int currentItemShowing) {
+        if (newSelection == PackedTime.NONE) return PackedTime.NONE;
         switch (currentItemShowing) {
             case HOUR_INDEX:
                 return mController.roundToNearest(newSelection, -1);
@@ -357,53 +405,91 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
      * for the selector, and redraw it at that position. The text representing the currently
      * selected value will be redrawn if required.
      *
-     * @param newSelection Timpoint - Time which should be selected.
+     * @param newSelection int - Packed time which should be selected.
      * @param forceDrawDot The dot in the circle will generally only be shown when the selection
      * @param index        The picker to use as a reference. Will be getCurrentItemShow() except when AM/PM is changed
      *                     is on non-visible values, but use this to force the dot to be shown.
      */
-    private void reselectSelector(Timepoint newSelection, boolean forceDrawDot, int index) {
+    private void reselectSelector(int newSelection, boolean forceDrawDot, int index) {
+        if (newSelection == PackedTime.NONE) return;
+        int minute = PackedTime.getMinute(newSelection);
         switch (index) {
             case HOUR_INDEX:
                 // The selection might have changed, recalculate the degrees and innerCircle values
-                int hour = newSelection.getHour();
+                int hour = PackedTime.getHour(newSelection);
                 boolean isInnerCircle = isHourInnerCircle(hour);
                 int degrees = (hour % 12) * 360 / 12;
 
                 mHourRadialSelectorView.setSelection(degrees, isInnerCircle, forceDrawDot);
                 mHourRadialTextsView.setSelection(hour);
                 // If we rounded the minutes, reposition the minuteSelector too.
-                if (newSelection.getMinute() != mCurrentTime.getMinute()) {
-                    int minDegrees = newSelection.getMinute() * 360 / 60;
+                if (minute != PackedTime.getMinute(mCurrentTime)) {
+                    int minDegrees = minute * 360 / 60;
                     mMinuteRadialSelectorView.setSelection(minDegrees, isInnerCircle, forceDrawDot);
-                    mMinuteRadialTextsView.setSelection(newSelection.getMinute());
+                    mMinuteRadialTextsView.setSelection(minute);
                 }
                 break;
             case MINUTE_INDEX:
                 // The selection might have changed, recalculate the degrees
-                degrees = newSelection.getMinute() * 360 / 60;
+                degrees = minute * 360 / 60;
 
                 mMinuteRadialSelectorView.setSelection(degrees, false, forceDrawDot);
-                mMinuteRadialTextsView.setSelection(newSelection.getMinute());
+                mMinuteRadialTextsView.setSelection(minute);
                 break;
         }
 
-        // Invalidate the currently showing picker to force a redraw
+        // Invalidate the currently showing selector to force a redraw, the texts redraw
+        // themselves when their selection changes
         switch (getCurrentItemShowing()) {
             case HOUR_INDEX:
                 mHourRadialSelectorView.invalidate();
-                mHourRadialTextsView.invalidate();
                 break;
             case MINUTE_INDEX:
                 mMinuteRadialSelectorView.invalidate();
-                mMinuteRadialTextsView.invalidate();
                 break;
         }
     }
 
-    private Timepoint getTimeFromDegrees(int degrees, boolean isInnerCircle, boolean forceToVisibleValue) {
+    /**
+     * The valid time a touch at the given degrees selects: getTimeFromDegrees followed by
+     * roundToValidTime. Both only depend on the degrees and the other field of the current time, so
+     * the results for all 361 degrees are computed once per picker, circle and visibility and
+     * a drag maps straight to a valid time with one array read.
+     */
+    private int getValidTimeFromDegrees(int degrees, boolean isInnerCircle, boolean forceToVisibleValue) {
+        if (degrees == -1) return PackedTime.NONE;
+        int index = getCurrentItemShowing();
+        if (index != HOUR_INDEX && index != MINUTE_INDEX) {
+            return roundToValidTime(getTimeFromDegrees(degrees, isInnerCircle, forceToVisibleValue), index);
+        }
+
+        int inner = isInnerCircle ? 1 : 0;
+        int force = forceToVisibleValue ? 1 : 0;
+        int context = index == HOUR_INDEX
+                ? PackedTime.getMinute(mCurrentTime) : PackedTime.getHour(mCurrentTime);
+        int[] table = mSnapTables[index][inner][force];
+        if (table == null || mSnapContexts[index][inner][force] != context) {
+            if (table == null) table = new int[361];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = roundToValidTime(getTimeFromDegrees(i, isInnerCircle, forceToVisibleValue), index);
+            }
+            mSnapTables[index][inner][force] = table;
+            mSnapContexts[index][inner][force] = context;
+        }
+        return table[degrees];
+    }
+
+    private void clearSnapTables() {
+        for (int[][][] tables : mSnapTables) {
+            for (int[][] table : tables) {
+                Arrays.fill(table, null);
+            }
+        }
+    }
+
+    private int getTimeFromDegrees(int degrees, boolean isInnerCircle, boolean forceToVisibleValue) {
         if (degrees == -1) {
-            return null;
+            return PackedTime.NONE;
         }
         int currentShowing = getCurrentItemShowing();
 
@@ -442,14 +528,14 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
             value += 12;
         }
 
-        Timepoint newSelection;
+        int newSelection;
         switch (currentShowing) {
             case HOUR_INDEX:
                 int hour = value;
-                newSelection = new Timepoint(hour, mCurrentTime.getMinute());
+                newSelection = PackedTime.withHour(mCurrentTime, hour);
                 break;
             case MINUTE_INDEX:
-                newSelection = new Timepoint(mCurrentTime.getHour(), value);
+                newSelection = PackedTime.withMinute(mCurrentTime, value);
                 break;
             default:
                 newSelection = mCurrentTime;
@@ -466,25 +552,28 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
      * @param pointY        The y coordinate.
      * @param forceLegal    Force the selection to be legal, regardless of how far the coordinates are
      *                      from the actual numbers.
-     * @param isInnerCircle If the selection may be in the inner circle, pass in a size-1 boolean
-     *                      array here, inside which the value will be true if the selection is in the inner circle,
-     *                      and false if in the outer circle.
      * @return Degrees from 0 to 360, if the selection was within the legal range. -1 if not.
+     * @see #isInnerCircleTouched()
      */
-    private int getDegreesFromCoords(float pointX, float pointY, boolean forceLegal,
-                                     final Boolean[] isInnerCircle) {
+    private int getDegreesFromCoords(float pointX, float pointY, boolean forceLegal) {
         switch (getCurrentItemShowing()) {
             case HOUR_INDEX:
-                return mHourRadialSelectorView.getDegreesFromCoords(
-                        pointX, pointY, forceLegal, isInnerCircle);
+                return mHourRadialSelectorView.getDegreesFromCoords(pointX, pointY, forceLegal);
             case MINUTE_INDEX:
-                return mMinuteRadialSelectorView.getDegreesFromCoords(
-                        pointX, pointY, forceLegal, isInnerCircle);
+                return mMinuteRadialSelectorView.getDegreesFromCoords(pointX, pointY, forceLegal);
             default:
                 return -1;
         }
     }
 
+    /**
+     * @return true if the coordinates last passed to {@link #getDegreesFromCoords} were in the
+     * inner circle, false if in the outer circle
+     */
+    private boolean isInnerCircleTouched() {
+        return getCurrentItemShowing() == HOUR_INDEX && mHourRadialSelectorView.isInnerCircleTouched();
+    }
+
     /**
      * Get the item (hours, minutes or seconds) that is currently showing.
      */
@@ -509,7 +598,7 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
 
         int lastIndex = getCurrentItemShowing();
         mCurrentItemShowing = index;
-        reselectSelector(getTime(), true, index);
+        reselectSelector(mCurrentTime, true, index);
 
         if (animate && (index != lastIndex)) {
             ObjectAnimator[] anims = new ObjectAnimator[4];
@@ -555,9 +644,7 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
         final float eventX = event.getX();
         final float eventY = event.getY();
         int degrees;
-        Timepoint value;
-        final Boolean[] isInnerCircle = new Boolean[1];
-        isInnerCircle[0] = false;
+        int value;
 
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
@@ -568,16 +655,19 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
                 mDownX = eventX;
                 mDownY = eventY;
 
-                mLastValueSelected = null;
+                mLastValueSelected = PackedTime.NONE;
                 mDoingMove = false;
                 mDoingTouch = true;
+                mFrameTimeRecorder.start();
 
                 // If we're in accessibility mode, force the touch to be legal. Otherwise,
                 // it will only register within the given touch target zone.
                 boolean forceLegal = mAccessibilityManager.isTouchExplorationEnabled();
                 // Calculate the degrees that is currently being touched.
-                mDownDegrees = getDegreesFromCoords(eventX, eventY, forceLegal, isInnerCircle);
-                Timepoint selectedTime = getTimeFromDegrees(mDownDegrees, isInnerCircle[0], false);
+                mDownDegrees = getDegreesFromCoords(eventX, eventY, forceLegal);
+                // Captured for the delayed selection, later events touch other coordinates
+                final boolean downInnerCircle = isInnerCircleTouched();
+                int selectedTime = getTimeFromDegrees(mDownDegrees, downInnerCircle, false);
                 if (mController.isOutOfRange(selectedTime, getCurrentItemShowing()))
                     mDownDegrees = -1;
                 if (mDownDegrees != -1) {
@@ -588,12 +678,11 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
                         @Override
                         public void run() {
                             mDoingMove = true;
-                            mLastValueSelected = getTimeFromDegrees(mDownDegrees, isInnerCircle[0],
+                            mLastValueSelected = getValidTimeFromDegrees(mDownDegrees, downInnerCircle,
                                     false);
-                            mLastValueSelected = roundToValidTime(mLastValueSelected, getCurrentItemShowing());
                             // Redraw
                             reselectSelector(mLastValueSelected, true, getCurrentItemShowing());
-                            mListener.onValueSelected(mLastValueSelected);
+                            mListener.onValueSelected(PackedTime.toTimepoint(mLastValueSelected));
                         }
                     }, TAP_TIMEOUT);
                 }
@@ -620,18 +709,17 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
 
                 // We're doing a move along the circle, so move the selection as appropriate.
                 mDoingMove = true;
+                mFrameTimeRecorder.recordInput(event.getEventTime());
                 mHandler.removeCallbacksAndMessages(null);
-                degrees = getDegreesFromCoords(eventX, eventY, true, isInnerCircle);
+                degrees = getDegreesFromCoords(eventX, eventY, true);
                 if (degrees != -1) {
-                    value = roundToValidTime(
-                            getTimeFromDegrees(degrees, isInnerCircle[0], false),
-                            getCurrentItemShowing()
-                    );
+                    value = getValidTimeFromDegrees(degrees, isInnerCircleTouched(), false);
                     reselectSelector(value, true, getCurrentItemShowing());
-                    if (value != null && (mLastValueSelected == null || !mLastValueSelected.equals(value))) {
+                    if (value != PackedTime.NONE && mLastValueSelected != value) {
                         mController.tryVibrate();
                         mLastValueSelected = value;
-                        mListener.onValueSelected(value);
+                        // Only a changed value reaches the listener as a Timepoint.
+                        mListener.onValueSelected(PackedTime.toTimepoint(value));
                     }
                 }
                 return true;
@@ -645,27 +733,37 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
 
                 mHandler.removeCallbacksAndMessages(null);
                 mDoingTouch = false;
+                mFrameTimeRecorder.stop();
 
                 // If we have a legal degrees selected, set the value and tell the listener.
                 if (mDownDegrees != -1) {
-                    degrees = getDegreesFromCoords(eventX, eventY, mDoingMove, isInnerCircle);
+                    degrees = getDegreesFromCoords(eventX, eventY, mDoingMove);
                     if (degrees != -1) {
-                        value = getTimeFromDegrees(degrees, isInnerCircle[0], !mDoingMove);
-                        value = roundToValidTime(value, getCurrentItemShowing());
+                        value = getValidTimeFromDegrees(degrees, isInnerCircleTouched(), !mDoingMove);
                         reselectSelector(value, false, getCurrentItemShowing());
-                        mCurrentTime = value;
-                        mListener.onValueSelected(value);
+                        setCurrentTime(value);
+                        mListener.onValueSelected(PackedTime.toTimepoint(value));
                         mListener.advancePicker(getCurrentItemShowing());
                     }
                 }
                 mDoingMove = false;
                 return true;
+            case MotionEvent.ACTION_CANCEL:
+                mFrameTimeRecorder.stop();
+                break;
             default:
                 break;
         }
         return false;
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        super.dispatchDraw(canvas);
+        mFrameTimeRecorder.recordDraw(System.nanoTime() - start);
+    }
+
     /**
      * Set touch input as enabled or disabled, for use with keyboard mode.
      */
@@ -775,20 +873,20 @@ public class RadialPickerLayout extends FrameLayout implements OnTouchListener {
                 value = maxValue;
             }
 
-            Timepoint newSelection;
+            int newSelection;
             switch (currentItemShowing) {
                 case HOUR_INDEX:
-                    newSelection = new Timepoint(value, mCurrentTime.getMinute());
+                    newSelection = PackedTime.withHour(mCurrentTime, value);
                     break;
                 case MINUTE_INDEX:
-                    newSelection = new Timepoint(mCurrentTime.getHour(), value);
+                    newSelection = PackedTime.withMinute(mCurrentTime, value);
                     break;
                 default:
                     newSelection = mCurrentTime;
             }
 
             setItem(currentItemShowing, newSelection);
-            mListener.onValueSelected(newSelection);
+            mListener.onValueSelected(PackedTime.toTimepoint(newSelection));
             return true;
         }
 
@@ -27,6 +27,11 @@ public class RadialSelectorView extends View {
     // Alpha level for the line.
     private static final int FULL_ALPHA = Utils.FULL_ALPHA;
 
+    // DEGREE_THRESHOLDS[d] is the smallest sine for which asinDegrees returns at least d.
+    private static final double[] DEGREE_THRESHOLDS = buildDegreeThresholds();
+    // Sines this close to a threshold are resolved with Math.asin.
+    private static final double THRESHOLD_MARGIN = 1e-9;
+
     private final Paint mPaint = new Paint();
 
     private boolean mIsInitialized;
@@ -39,6 +44,8 @@ public class RadialSelectorView extends View {
     private float mSelectionRadiusMultiplier;
     private float mAnimationRadiusMultiplier;
     private boolean mHasInnerCircle;
+    // Whether the coordinates last passed to getDegreesFromCoords were on the inner circle
+    private boolean mInnerCircleTouched;
     private int mSelectionAlpha;
 
     private int mXCenter;
@@ -155,8 +162,16 @@ public class RadialSelectorView extends View {
         mAnimationRadiusMultiplier = animationRadiusMultiplier;
     }
 
-    public int getDegreesFromCoords(float pointX, float pointY, boolean forceLegal,
-                                    final Boolean[] isInnerCircle) {
+    /**
+     * @return whether the coordinates last passed to {@link #getDegreesFromCoords} were closer to
+     * the inner circle, always false without one
+     */
+    public boolean isInnerCircleTouched() {
+        return mInnerCircleTouched;
+    }
+
+    public int getDegreesFromCoords(float pointX, float pointY, boolean forceLegal) {
+        mInnerCircleTouched = false;
         if (!mDrawValuesReady) {
             return -1;
         }
@@ -167,17 +182,17 @@ public class RadialSelectorView extends View {
         // Check if we're outside the range
         if (mHasInnerCircle) {
             if (forceLegal) {
-                // If we're told to force the coordinates to be legal, we'll set the isInnerCircle
-                // boolean based based off whichever number the coordinates are closer to.
+                // If we're told to force the coordinates to be legal, we'll set mInnerCircleTouched
+                // based off whichever number the coordinates are closer to.
                 int innerNumberRadius = (int) (mCircleRadius * mInnerNumbersRadiusMultiplier);
                 int distanceToInnerNumber = (int) Math.abs(hypotenuse - innerNumberRadius);
                 int outerNumberRadius = (int) (mCircleRadius * mOuterNumbersRadiusMultiplier);
                 int distanceToOuterNumber = (int) Math.abs(hypotenuse - outerNumberRadius);
 
-                isInnerCircle[0] = (distanceToInnerNumber <= distanceToOuterNumber);
+                mInnerCircleTouched = (distanceToInnerNumber <= distanceToOuterNumber);
             } else {
                 // Otherwise, if we're close enough to either number (with the space between the
-                // two allotted equally), set the isInnerCircle boolean as the closer one.
+                // two allotted equally), set mInnerCircleTouched to the closer one.
                 // appropriately, but otherwise return -1.
                 int minAllowedHypotenuseForInnerNumber =
                         (int) (mCircleRadius * mInnerNumbersRadiusMultiplier) - mSelectionRadius;
@@ -188,10 +203,10 @@ public class RadialSelectorView extends View {
 
                 if (hypotenuse >= minAllowedHypotenuseForInnerNumber &&
                         hypotenuse <= halfwayHypotenusePoint) {
-                    isInnerCircle[0] = true;
+                    mInnerCircleTouched = true;
                 } else if (hypotenuse <= maxAllowedHypotenuseForOuterNumber &&
                         hypotenuse >= halfwayHypotenusePoint) {
-                    isInnerCircle[0] = false;
+                    mInnerCircleTouched = false;
                 } else {
                     return -1;
                 }
@@ -213,8 +228,7 @@ public class RadialSelectorView extends View {
 
 
         float opposite = Math.abs(pointY - mYCenter);
-        double radians = Math.asin(opposite / hypotenuse);
-        int degrees = (int) (radians * 180 / Math.PI);
+        int degrees = asinDegrees(opposite / hypotenuse);
 
         // Now we have to translate to the correct quadrant.
         boolean rightSide = (pointX > mXCenter);
@@ -231,6 +245,60 @@ public class RadialSelectorView extends View {
         return degrees;
     }
 
+    /**
+     * The whole degrees of the arc sine, looked up in {@link #DEGREE_THRESHOLDS} instead of
+     * calling Math.asin on every touch event. The result is the same as {@link #exactAsinDegrees}.
+     */
+    static int asinDegrees(double sine) {
+        // Out of range and NaN sines keep the behaviour of Math.asin
+        if (!(sine >= 0 && sine <= 1)) return exactAsinDegrees(sine);
+
+        int low = 0;
+        int high = DEGREE_THRESHOLDS.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (DEGREE_THRESHOLDS[mid] <= sine) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (sine - DEGREE_THRESHOLDS[low] < THRESHOLD_MARGIN
+                || (low + 1 < DEGREE_THRESHOLDS.length
+                && DEGREE_THRESHOLDS[low + 1] - sine < THRESHOLD_MARGIN)) {
+            return exactAsinDegrees(sine);
+        }
+        return low;
+    }
+
+    static int exactAsinDegrees(double sine) {
+        double radians = Math.asin(sine);
+        return (int) (radians * 180 / Math.PI);
+    }
+
+    /**
+     * Find the threshold of every degree by a binary search over the doubles in [0, 1].
+     */
+    private static double[] buildDegreeThresholds() {
+        long one = Double.doubleToLongBits(1);
+        int maxDegrees = exactAsinDegrees(1);
+        double[] thresholds = new double[maxDegrees + 1];
+        for (int degrees = 1; degrees <= maxDegrees; degrees++) {
+            long low = 0;
+            long high = one;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (exactAsinDegrees(Double.longBitsToDouble(mid)) >= degrees) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            thresholds[degrees] = Double.longBitsToDouble(low);
+        }
+        return thresholds;
+    }
+
     @Override
     public void onDraw(Canvas canvas) {
         int viewWidth = getWidth();
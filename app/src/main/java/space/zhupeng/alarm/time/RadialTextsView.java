@@ -7,9 +7,12 @@ import android.animation.ValueAnimator;
 import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
@@ -19,6 +22,14 @@ import space.zhupeng.alarm.R;
 
 /**
  * A view to show a series of numbers in a circular pattern.
+ * <p>
+ * Whether each number is valid is cached until the selection context changes, and the view is
+ * only invalidated when the selection actually moves, so most frames of a drag do not redraw it.
+ * <p>
+ * At rest the numbers are rasterised once, as they look when not selected, into a face bitmap
+ * which is redrawn only when the size, the colors or the validity of the numbers change. A frame
+ * copies the face around the selected number and draws just that number live, so moving the
+ * selection never redraws the face. The numbers are drawn directly while they animate in or out.
  */
 @SuppressWarnings("all")
 public class RadialTextsView extends View {
@@ -39,6 +50,16 @@ public class RadialTextsView extends View {
     private Typeface mTypefaceRegular;
     private String[] mTexts;
     private String[] mInnerTexts;
+    // The value of each text and whether the validator accepts it, refreshed on the next draw
+    // after invalidateValidity
+    private TextValidity mValidity;
+    private TextValidity mInnerValidity;
+
+    private Bitmap mFace;
+    private Canvas mFaceCanvas;
+    private boolean mFaceDirty = true;
+    private final Rect mTextBounds = new Rect();
+    private final Rect mFacePart = new Rect();
     private boolean mHasInnerCircle;
     private float mCircleRadiusMultiplier;
     private float mNumbersRadiusMultiplier;
@@ -64,13 +85,21 @@ public class RadialTextsView extends View {
     ObjectAnimator mReappearAnimator;
     private InvalidateUpdateListener mInvalidateUpdateListener;
 
+    // Grid column and row of each of the 12 texts, clockwise from the top.
+    private static final int[] GRID_X = {3, 4, 5, 6, 5, 4, 3, 2, 1, 0, 1, 2};
+    private static final int[] GRID_Y = {0, 1, 2, 3, 4, 5, 6, 5, 4, 3, 2, 1};
+
     public RadialTextsView(Context context) {
         super(context);
         mIsInitialized = false;
     }
 
-    public void initialize(Context context, String[] texts, String[] innerTexts,
-                           TimePickerController controller, SelectionValidator validator, boolean disappearsOut) {
+    /**
+     * @param values      the number shown by each of the texts
+     * @param innerValues the number shown by each of the inner texts, null if innerTexts is null
+     */
+    public void initialize(Context context, String[] texts, int[] values, String[] innerTexts, int[] innerValues,
+                           SelectionValidator validator, boolean disappearsOut) {
         if (mIsInitialized) {
             Log.e(TAG, "This RadialTextsView may only be initialized once.");
             return;
@@ -102,6 +131,8 @@ public class RadialTextsView extends View {
         mTexts = texts;
         mInnerTexts = innerTexts;
         mHasInnerCircle = (innerTexts != null);
+        mValidity = new TextValidity(values);
+        mInnerValidity = mHasInnerCircle ? new TextValidity(innerValues) : null;
 
         // Calculate the radius for the main circle.
         mCircleRadiusMultiplier = Float.parseFloat(
@@ -137,6 +168,7 @@ public class RadialTextsView extends View {
         mValidator = validator;
 
         mTextGridValuesDirty = true;
+        mFaceDirty = true;
         mIsInitialized = true;
     }
 
@@ -146,7 +178,18 @@ public class RadialTextsView extends View {
      * @param selection The text which is currently selected
      */
     protected void setSelection(int selection) {
+        if (this.selection == selection) return;
         this.selection = selection;
+        invalidate();
+    }
+
+    /**
+     * Ask the validator again on the next draw, after the current time or the limiter changed.
+     */
+    void invalidateValidity() {
+        if (!mIsInitialized) return;
+        mValidity.invalidate();
+        if (mHasInnerCircle) mInnerValidity.invalidate();
     }
 
     /**
@@ -166,6 +209,27 @@ public class RadialTextsView extends View {
         mTextGridValuesDirty = true;
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        releaseFace();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseFace();
+    }
+
+    private void releaseFace() {
+        if (mFace != null) {
+            mFace.recycle();
+            mFace = null;
+            mFaceCanvas = null;
+        }
+        mFaceDirty = true;
+    }
+
     @Override
     public void onDraw(Canvas canvas) {
         int viewWidth = getWidth();
@@ -208,14 +272,100 @@ public class RadialTextsView extends View {
             mTextGridValuesDirty = false;
         }
 
-        // Draw the texts in the pre-calculated positions.
-        drawTexts(canvas, mTextSize, mTypefaceLight, mTexts, mTextGridWidths, mTextGridHeights);
+        if (mValidity.update(mValidator)) mFaceDirty = true;
+        if (mHasInnerCircle && mInnerValidity.update(mValidator)) mFaceDirty = true;
+
+        if (mAnimationRadiusMultiplier != 1) {
+            drawTexts(canvas, selection);
+            return;
+        }
+
+        if (mFace == null) {
+            mFace = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            mFaceCanvas = new Canvas(mFace);
+            mFaceDirty = true;
+        }
+        if (mFaceDirty) {
+            mFace.eraseColor(Color.TRANSPARENT);
+            drawTexts(mFaceCanvas, -1);
+            mFaceDirty = false;
+        }
+
+        if (drawSelected(canvas, mTextSize, mTypefaceLight, mTexts, mValidity,
+                mTextGridWidths, mTextGridHeights)) {
+            return;
+        }
+        if (mHasInnerCircle && drawSelected(canvas, mInnerTextSize, mTypefaceRegular, mInnerTexts,
+                mInnerValidity, mInnerTextGridWidths, mInnerTextGridHeights)) {
+            return;
+        }
+        // The selection is between two numbers
+        canvas.drawBitmap(mFace, 0, 0, null);
+    }
+
+    /**
+     * Draw the texts of both circles in the pre-calculated positions.
+     */
+    private void drawTexts(Canvas canvas, int selected) {
+        drawTexts(canvas, mTextSize, mTypefaceLight, mTexts, mValidity,
+                mTextGridWidths, mTextGridHeights, selected);
         if (mHasInnerCircle) {
-            drawTexts(canvas, mInnerTextSize, mTypefaceRegular, mInnerTexts,
-                    mInnerTextGridWidths, mInnerTextGridHeights);
+            drawTexts(canvas, mInnerTextSize, mTypefaceRegular, mInnerTexts, mInnerValidity,
+                    mInnerTextGridWidths, mInnerTextGridHeights, selected);
         }
     }
 
+    /**
+     * If one of the texts is selected, copy the face around it and draw it in the selected paint.
+     *
+     * @return true if one of the texts is selected
+     */
+    private boolean drawSelected(Canvas canvas, float textSize, Typeface typeface, String[] texts,
+                                 TextValidity validity, float[] textGridWidths, float[] textGridHeights) {
+        for (int i = 0; i < texts.length; i++) {
+            if (validity.getValue(i) != selection) continue;
+
+            float x = textGridWidths[GRID_X[i]];
+            float y = textGridHeights[GRID_Y[i]];
+            // Leave out the text as the face shows it, with a pixel to spare for anti-aliasing.
+            mPaint.setTextSize(textSize);
+            mPaint.setTypeface(typeface);
+            Paint facePaint = validity.isValid(i) ? mPaint : mInactivePaint;
+            facePaint.getTextBounds(texts[i], 0, texts[i].length(), mTextBounds);
+            float left = x - facePaint.measureText(texts[i]) / 2;
+            drawFaceAround(canvas, (int) Math.floor(left + mTextBounds.left) - 1,
+                    (int) Math.floor(y + mTextBounds.top) - 1,
+                    (int) Math.ceil(left + mTextBounds.right) + 1,
+                    (int) Math.ceil(y + mTextBounds.bottom) + 1);
+            canvas.drawText(texts[i], x, y, mSelectedPaint);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copy the face except for the given hole, as the four bands around it. Unlike a difference
+     * clip this is supported by every hardware renderer.
+     */
+    private void drawFaceAround(Canvas canvas, int left, int top, int right, int bottom) {
+        int width = mFace.getWidth();
+        int height = mFace.getHeight();
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+        drawFacePart(canvas, 0, 0, width, top);
+        drawFacePart(canvas, 0, bottom, width, height);
+        drawFacePart(canvas, 0, top, left, bottom);
+        drawFacePart(canvas, right, top, width, bottom);
+    }
+
+    private void drawFacePart(Canvas canvas, int left, int top, int right, int bottom) {
+        if (left >= right || top >= bottom) return;
+        mFacePart.set(left, top, right, bottom);
+        canvas.drawBitmap(mFace, mFacePart, mFacePart, null);
+    }
+
     /**
      * Using the trigonometric Unit Circle, calculate the positions that the text will need to be
      * drawn at based on the specified circle radius. Place the values in the textGridHeights and
@@ -253,37 +403,23 @@ public class RadialTextsView extends View {
         textGridWidths[6] = xCenter + offset1;
     }
 
-    private Paint[] assignTextColors(String[] texts) {
-        Paint[] paints = new Paint[texts.length];
-        for (int i = 0; i < texts.length; i++) {
-            int text = Integer.parseInt(texts[i]);
-            if (text == selection) paints[i] = mSelectedPaint;
-            else if (mValidator.isValidSelection(text)) paints[i] = mPaint;
-            else paints[i] = mInactivePaint;
-        }
-        return paints;
-    }
-
     /**
      * Draw the 12 text values at the positions specified by the textGrid parameters.
+     *
+     * @param selected the value to draw as selected, -1 for none
      */
     private void drawTexts(Canvas canvas, float textSize, Typeface typeface, String[] texts,
-                           float[] textGridWidths, float[] textGridHeights) {
+                           TextValidity validity, float[] textGridWidths, float[] textGridHeights,
+                           int selected) {
         mPaint.setTextSize(textSize);
         mPaint.setTypeface(typeface);
-        Paint[] textPaints = assignTextColors(texts);
-        canvas.drawText(texts[0], textGridWidths[3], textGridHeights[0], textPaints[0]);
-        canvas.drawText(texts[1], textGridWidths[4], textGridHeights[1], textPaints[1]);
-        canvas.drawText(texts[2], textGridWidths[5], textGridHeights[2], textPaints[2]);
-        canvas.drawText(texts[3], textGridWidths[6], textGridHeights[3], textPaints[3]);
-        canvas.drawText(texts[4], textGridWidths[5], textGridHeights[4], textPaints[4]);
-        canvas.drawText(texts[5], textGridWidths[4], textGridHeights[5], textPaints[5]);
-        canvas.drawText(texts[6], textGridWidths[3], textGridHeights[6], textPaints[6]);
-        canvas.drawText(texts[7], textGridWidths[2], textGridHeights[5], textPaints[7]);
-        canvas.drawText(texts[8], textGridWidths[1], textGridHeights[4], textPaints[8]);
-        canvas.drawText(texts[9], textGridWidths[0], textGridHeights[3], textPaints[9]);
-        canvas.drawText(texts[10], textGridWidths[1], textGridHeights[2], textPaints[10]);
-        canvas.drawText(texts[11], textGridWidths[2], textGridHeights[1], textPaints[11]);
+        for (int i = 0; i < texts.length; i++) {
+            Paint paint;
+            if (validity.getValue(i) == selected) paint = mSelectedPaint;
+            else if (validity.isValid(i)) paint = mPaint;
+            else paint = mInactivePaint;
+            canvas.drawText(texts[i], textGridWidths[GRID_X[i]], textGridHeights[GRID_Y[i]], paint);
+        }
     }
 
     /**
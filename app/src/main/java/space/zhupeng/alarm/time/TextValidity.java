@@ -0,0 +1,58 @@
+package space.zhupeng.alarm.time;
+
+/**
+ * The numbers shown by a {@link RadialTextsView} and whether its
+ * {@link RadialTextsView.SelectionValidator} accepts each of them. The validator is asked again only
+ * after {@link #invalidate()}, so reading the validity while drawing never calls it.
+ */
+final class TextValidity {
+
+    private final int[] mValues;
+    private final boolean[] mValid;
+    private boolean mDirty = true;
+
+    TextValidity(int[] values) {
+        mValues = values;
+        mValid = new boolean[values.length];
+    }
+
+    /**
+     * Ask the validator again on the next {@link #update}, after the current time or the limiter
+     * changed.
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * Ask the validator about every number if the validity was invalidated since the last update.
+     *
+     * @return true if any number changed validity
+     */
+    boolean update(RadialTextsView.SelectionValidator validator) {
+        if (!mDirty) return false;
+        mDirty = false;
+
+        boolean changed = false;
+        for (int i = 0; i < mValues.length; i++) {
+            boolean valid = validator.isValidSelection(mValues[i]);
+            if (valid != mValid[i]) {
+                mValid[i] = valid;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    int size() {
+        return mValues.length;
+    }
+
+    int getValue(int index) {
+        return mValues[index];
+    }
+
+    boolean isValid(int index) {
+        return mValid[index];
+    }
+}
@@ -21,6 +21,11 @@ interface TimePickerController {
      */
     boolean isOutOfRange(Timepoint time, int index);
 
+    /**
+     * Packed counterpart of {@link #isOutOfRange(Timepoint, int)}, see {@link PackedTime}.
+     */
+    boolean isOutOfRange(int time, int index);
+
     /**
      * Will round the given Timepoint to the nearest valid Timepoint given the following restrictions:
      * - TYPE.HOUR, it will just round to the next valid point, possible adjusting minutes and seconds
@@ -31,4 +36,9 @@ interface TimePickerController {
      * @return timepoint - the nearest valid timepoint
      */
     Timepoint roundToNearest(Timepoint time, @Timepoint.TYPE int type);
+
+    /**
+     * Packed counterpart of {@link #roundToNearest(Timepoint, int)}, see {@link PackedTime}.
+     */
+    int roundToNearest(int time, @Timepoint.TYPE int type);
 }
@@ -1,29 +1,37 @@
 package space.zhupeng.alarm.time;
 
 import android.animation.ObjectAnimator;
+import android.app.Activity;
 import android.app.Dialog;
 import android.app.DialogFragment;
+import android.app.FragmentManager;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.support.annotation.ColorInt;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.StringRes;
 import android.support.v4.content.ContextCompat;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Locale;
 
 import space.zhupeng.alarm.R;
@@ -33,12 +41,21 @@ import space.zhupeng.alarm.R;
  */
 
 public class TimePickerDialog extends DialogFragment implements RadialPickerLayout.OnValueSelectedListener, TimePickerController {
+    private static final String TAG = "TimePickerDialog";
 
     private static final String KEY_INITIAL_TIME = "initial_time";
     private static final String KEY_TITLE = "dialog_title";
     private static final String KEY_CURRENT_ITEM_SHOWING = "current_item_showing";
     private static final String KEY_IN_KB_MODE = "in_kb_mode";
     private static final String KEY_TYPED_TIMES = "typed_times";
+
+    // Keyboard mode grammar: TYPED_TRANSITIONS[state * 10 + digit] is the state after typing the
+    // digit, -1 if it cannot be typed there. The hour takes one or two digits, the minutes always
+    // take two. State 0 is the start.
+    private static final int[] TYPED_TRANSITIONS = buildTypedTransitions();
+    private static final int MAX_TYPED_KEYS = 4;
+    // Index of the first typed prefix of each length, see typedPrefixIndex.
+    private static final int[] TYPED_PREFIX_OFFSETS = {0, 1, 11, 111, 1111};
     private static final String KEY_ACCENT = "accent";
     private static final String KEY_VIBRATE = "vibrate";
     private static final String KEY_DISMISS = "dismiss";
@@ -92,8 +109,17 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     private String mDoublePlaceholderText;
     private String mDeletedKeyFormat;
     private boolean mInKbMode;
-    private ArrayList<Integer> mTypedTimes;
-    private Node mLegalTimesTree;
+    // The digits typed in keyboard mode, and the grammar state after each of them.
+    private final int[] mTypedTimes = new int[MAX_TYPED_KEYS];
+    private final int[] mTypedStates = new int[MAX_TYPED_KEYS + 1];
+    private int mTypedCount;
+    // Typed prefixes which can still become a time the limiter accepts, built on first use.
+    private boolean[] mLegalTypedPrefixes;
+
+    // Whether the first view came from prewarm, and the uptime show was called at, 0 once it is
+    // drawn.
+    private boolean mPrewarmed;
+    private long mShowRequestedAt;
 
     // Accessibility strings.
     private String mHourPickerDescription;
@@ -131,6 +157,49 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
         return TimePickerDialog.newInstance(callback, now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE));
     }
 
+    /**
+     * Inflate the picker for the activity once its main thread is idle, and set up its numbers
+     * with their typefaces. This also runs the static initialisers of the picker, including its
+     * angle table. The next dialog shown in the activity then only binds its time, limiter and
+     * colours, and sets up the circle and the selectors, which take the dialog's accent colour.
+     * The snap tables of a drag depend on the current time and are still built on the first
+     * touch. One view is kept ready at a time, and another is prepared after a dialog which used
+     * it goes away.
+     * <p>
+     * The open latency, cold or warm, is logged with
+     * {@code adb shell setprop log.tag.TimePickerDialog DEBUG}.
+     */
+    public static void prewarm(@NonNull final Activity activity) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (activity.isFinishing()) return false;
+                View decorView = activity.getWindow().getDecorView();
+                if (decorView.getTag(R.id.prewarmed_time_picker) == null) {
+                    // Themed like the context the dialog inflates its view with
+                    TypedValue dialogTheme = new TypedValue();
+                    activity.getTheme().resolveAttribute(android.R.attr.dialogTheme, dialogTheme, true);
+                    Context context = new ContextThemeWrapper(activity, dialogTheme.resourceId);
+                    View view = LayoutInflater.from(context).inflate(R.layout.dialog_time, null, false);
+                    ((RadialPickerLayout) view.findViewById(R.id.time_picker)).prepare(context);
+                    decorView.setTag(R.id.prewarmed_time_picker, view);
+                    TypefaceHelper.get(activity, "Roboto-Medium");
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return the view prewarmed for the activity, or null if there is none
+     */
+    private static View takePrewarmedView(Activity activity) {
+        View decorView = activity.getWindow().getDecorView();
+        View view = (View) decorView.getTag(R.id.prewarmed_time_picker);
+        decorView.setTag(R.id.prewarmed_time_picker, null);
+        return view;
+    }
+
     public void initialize(OnTimeSetListener callback, int hourOfDay, int minute) {
         mCallback = callback;
 
@@ -244,6 +313,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
 
     public void setMinTime(Timepoint minTime) {
         mDefaultLimiter.setMinTime(minTime);
+        notifyLimiterChanged();
     }
 
     @SuppressWarnings("unused")
@@ -253,6 +323,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
 
     public void setMaxTime(Timepoint maxTime) {
         mDefaultLimiter.setMaxTime(maxTime);
+        notifyLimiterChanged();
     }
 
     /**
@@ -264,6 +335,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
      */
     public void setSelectableTimes(Timepoint[] selectableTimes) {
         mDefaultLimiter.setSelectableTimes(selectableTimes);
+        notifyLimiterChanged();
     }
 
     /**
@@ -278,6 +350,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
      */
     public void setDisabledTimes(Timepoint[] disabledTimes) {
         mDefaultLimiter.setDisabledTimes(disabledTimes);
+        notifyLimiterChanged();
     }
 
     /**
@@ -292,18 +365,8 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
      */
     public void setTimeInterval(@IntRange(from = 1, to = 24) int hourInterval,
                                 @IntRange(from = 1, to = 60) int minuteInterval) {
-        List<Timepoint> timepoints = new ArrayList<>();
-
-        int hour = 0;
-        while (hour < 24) {
-            int minute = 0;
-            while (minute < 60) {
-                timepoints.add(new Timepoint(hour, minute));
-                minute += minuteInterval;
-            }
-            hour += hourInterval;
-        }
-        setSelectableTimes(timepoints.toArray(new Timepoint[timepoints.size()]));
+        mDefaultLimiter.setTimeInterval(hourInterval, minuteInterval);
+        notifyLimiterChanged();
     }
 
     /**
@@ -421,6 +484,12 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     @SuppressWarnings("unused")
     public void setTimepointLimiter(TimepointLimiter limiter) {
         mLimiter = limiter;
+        notifyLimiterChanged();
+    }
+
+    private void notifyLimiterChanged() {
+        mLegalTypedPrefixes = null;
+        if (mTimePicker != null) mTimePicker.onLimiterChanged();
     }
 
     @Override
@@ -440,6 +509,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
             mCancelString = savedInstanceState.getString(KEY_CANCEL_STRING);
             mCancelColor = savedInstanceState.getInt(KEY_CANCEL_COLOR);
             mLimiter = savedInstanceState.getParcelable(KEY_TIMEPOINTLIMITER);
+            mLegalTypedPrefixes = null;
 
             /*
             If the user supplied a custom limiter, we need to create a new default one to prevent
@@ -458,8 +528,21 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
+        return createView(inflater, container, savedInstanceState, true);
+    }
 
-        View view = inflater.inflate(R.layout.dialog_time, container, false);
+    /**
+     * @param mayUsePrewarmed false for a view rebuilt for a configuration change, which must not
+     *                        take the prewarmed view meant for the next dialog
+     */
+    private View createView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState,
+                            boolean mayUsePrewarmed) {
+        View view = mayUsePrewarmed ? takePrewarmedView(getActivity()) : null;
+        boolean warm = view != null;
+        // Stays set when the view is rebuilt, so another is prewarmed once this dialog goes away
+        if (warm) mPrewarmed = true;
+        if (view == null) view = inflater.inflate(R.layout.dialog_time, container, false);
+        if (mShowRequestedAt != 0) logOpenLatency(view, warm);
         KeyboardListener keyboardListener = new KeyboardListener();
         view.findViewById(R.id.dialog_time_picker).setOnKeyListener(keyboardListener);
 
@@ -555,13 +638,10 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
         mDoublePlaceholderText = res.getString(R.string.time_placeholder);
         mDeletedKeyFormat = res.getString(R.string.deleted_key);
         mPlaceholderText = mDoublePlaceholderText.charAt(0);
-        generateLegalTimesTree();
         if (mInKbMode) {
-            mTypedTimes = savedInstanceState.getIntegerArrayList(KEY_TYPED_TIMES);
+            restoreTypedTimes(savedInstanceState.getIntArray(KEY_TYPED_TIMES));
             tryStartingKbMode(-1);
             mHourView.invalidate();
-        } else if (mTypedTimes == null) {
-            mTypedTimes = new ArrayList<>();
         }
 
         // Set the title (if any)
@@ -594,13 +674,50 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
         return view;
     }
 
+    @Override
+    public void show(FragmentManager manager, String tag) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) mShowRequestedAt = SystemClock.uptimeMillis();
+        super.show(manager, tag);
+    }
+
+    /**
+     * Log the time from {@link #show} to the end of the first frame drawing the view.
+     */
+    private void logOpenLatency(final View view, final boolean warm) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs after the traversal that draws the frame
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(TAG, (warm ? "warm" : "cold") + " open took "
+                                + (SystemClock.uptimeMillis() - mShowRequestedAt) + " ms");
+                        mShowRequestedAt = 0;
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mPrewarmed && getActivity() != null) {
+            mPrewarmed = false;
+            prewarm(getActivity());
+        }
+    }
+
     @Override
     public void onConfigurationChanged(final Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
         ViewGroup viewGroup = (ViewGroup) getView();
         if (viewGroup != null) {
             viewGroup.removeAllViewsInLayout();
-            View view = onCreateView(getActivity().getLayoutInflater(), viewGroup, null);
+            View view = createView(getActivity().getLayoutInflater(), viewGroup, null, false);
             viewGroup.addView(view);
         }
     }
@@ -649,7 +766,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
             outState.putInt(KEY_CURRENT_ITEM_SHOWING, mTimePicker.getCurrentItemShowing());
             outState.putBoolean(KEY_IN_KB_MODE, mInKbMode);
             if (mInKbMode) {
-                outState.putIntegerArrayList(KEY_TYPED_TIMES, mTypedTimes);
+                outState.putIntArray(KEY_TYPED_TIMES, Arrays.copyOf(mTypedTimes, mTypedCount));
             }
             outState.putString(KEY_TITLE, mTitle);
             outState.putInt(KEY_ACCENT, mAccentColor);
@@ -689,7 +806,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
 
     @Override
     public void enablePicker() {
-        if (!isTypedTimeFullyLegal()) mTypedTimes.clear();
+        if (!isTypedTimeFullyLegal()) mTypedCount = 0;
         finishKbMode(true);
     }
 
@@ -714,6 +831,23 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
         return mLimiter.roundToNearest(time, type, Timepoint.MINUTE);
     }
 
+    @Override
+    public boolean isOutOfRange(int current, int index) {
+        // Only a custom limiter needs a Timepoint.
+        if (mLimiter == mDefaultLimiter) {
+            return mDefaultLimiter.isOutOfRange(current, index, Timepoint.MINUTE);
+        }
+        return mLimiter.isOutOfRange(PackedTime.toTimepoint(current), index, Timepoint.MINUTE);
+    }
+
+    @Override
+    public int roundToNearest(int time, @Timepoint.TYPE int type) {
+        if (mLimiter == mDefaultLimiter) {
+            return mDefaultLimiter.roundToNearest(time, type, Timepoint.MINUTE);
+        }
+        return mLimiter.roundToNearest(PackedTime.toTimepoint(time), type, Timepoint.MINUTE).toSeconds();
+    }
+
     private void setHour(int value, boolean announce) {
         final String format = "%02d";
 
@@ -802,9 +936,9 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
             return true;
         } else if (keyCode == KeyEvent.KEYCODE_DEL) {
             if (mInKbMode) {
-                if (!mTypedTimes.isEmpty()) {
+                if (mTypedCount > 0) {
                     int deleted = deleteLastTypedKey();
-                    String deletedKeyStr = String.format("%d", getValFromKeyCode(deleted));
+                    String deletedKeyStr = String.format("%d", deleted);
                     Utils.tryAccessibilityAnnounce(mTimePicker,
                             String.format(mDeletedKeyFormat, deletedKeyStr));
                     updateDisplay(true);
@@ -820,7 +954,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
                     // Something's wrong, because time picker should definitely not be null.
                     return true;
                 }
-                mTypedTimes.clear();
+                mTypedCount = 0;
                 tryStartingKbMode(keyCode);
                 return true;
             }
@@ -851,21 +985,23 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     }
 
     private boolean addKeyIfLegal(int keyCode) {
-        // If we're in 24hour mode, we'll need to check if the input is full. If in AM/PM mode,
-        int textSize = 4;
-        if (mTypedTimes.size() == textSize) {
+        if (mTypedCount == MAX_TYPED_KEYS) {
             return false;
         }
 
-        mTypedTimes.add(keyCode);
-        if (!isTypedTimeLegalSoFar()) {
-            deleteLastTypedKey();
+        int val = getValFromKeyCode(keyCode);
+        int state = TYPED_TRANSITIONS[mTypedStates[mTypedCount] * 10 + val];
+        if (state == -1) {
+            return false;
+        }
+        mTypedTimes[mTypedCount] = val;
+        if (!isTypedTimeLegalSoFar(mTypedCount + 1)) {
             return false;
         }
+        mTypedCount++;
+        mTypedStates[mTypedCount] = state;
 
-        int val = getValFromKeyCode(keyCode);
         Utils.tryAccessibilityAnnounce(mTimePicker, String.format(Locale.getDefault(), "%d", val));
-        // Automatically fill in 0's if AM or PM was legally entered.
         if (isTypedTimeFullyLegal()) {
             mOkButton.setEnabled(true);
         }
@@ -874,38 +1010,50 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     }
 
     /**
-     * Traverse the tree to see if the keys that have been typed so far are legal as is,
-     * or may become legal as more keys are typed (excluding backspace).
+     * Check whether the first count typed digits, already accepted by the grammar, can still
+     * become a time the limiter accepts when more keys are typed (excluding backspace).
      */
-    private boolean isTypedTimeLegalSoFar() {
-        Node node = mLegalTimesTree;
-        for (int keyCode : mTypedTimes) {
-            node = node.canReach(keyCode);
-            if (node == null) {
-                return false;
-            }
+    private boolean isTypedTimeLegalSoFar(int count) {
+        if (mLegalTypedPrefixes == null) {
+            mLegalTypedPrefixes = buildLegalTypedPrefixes();
         }
-        return true;
+        return mLegalTypedPrefixes[typedPrefixIndex(mTypedTimes, count)];
     }
 
     /**
      * Check if the time that has been typed so far is completely legal, as is.
      */
     private boolean isTypedTimeFullyLegal() {
-        // For 24-hour mode, the time is legal if the hours and minutes are each legal. Note:
-        // getEnteredTime() will ONLY call isTypedTimeFullyLegal() when NOT in 24hour mode.
+        // The grammar only accepts valid minutes and hours, so any three or four digits it
+        // accepted are a time. It is legal if the limiter accepts it.
+        if (mTypedCount < 3) return false;
         int[] values = getEnteredTime(null);
-        return (values[0] >= 0 && values[1] >= 0 && values[1] < 60 && values[2] >= 0 && values[2] < 60);
+        return !isOutOfRange(PackedTime.of(values[0], values[1]), MINUTE_INDEX);
     }
 
+    /**
+     * @return the digit which was deleted
+     */
     private int deleteLastTypedKey() {
-        int deleted = mTypedTimes.remove(mTypedTimes.size() - 1);
+        int deleted = mTypedTimes[--mTypedCount];
         if (!isTypedTimeFullyLegal()) {
             mOkButton.setEnabled(false);
         }
         return deleted;
     }
 
+    private void restoreTypedTimes(int[] typedTimes) {
+        mTypedCount = 0;
+        if (typedTimes == null) return;
+        for (int val : typedTimes) {
+            if (mTypedCount == MAX_TYPED_KEYS) break;
+            int state = TYPED_TRANSITIONS[mTypedStates[mTypedCount] * 10 + val];
+            if (state == -1) break;
+            mTypedTimes[mTypedCount++] = val;
+            mTypedStates[mTypedCount] = state;
+        }
+    }
+
     /**
      * Get out of keyboard mode. If there is nothing in typedTimes, revert to TimePicker's time.
      *
@@ -913,10 +1061,10 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
      */
     private void finishKbMode(boolean updateDisplays) {
         mInKbMode = false;
-        if (!mTypedTimes.isEmpty()) {
+        if (mTypedCount > 0) {
             int values[] = getEnteredTime(null);
             mTimePicker.setTime(new Timepoint(values[0], values[1]));
-            mTypedTimes.clear();
+            mTypedCount = 0;
         }
         if (updateDisplays) {
             updateDisplay(false);
@@ -933,7 +1081,7 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
      *                          Otherwise, revert to the timepicker's values.
      */
     private void updateDisplay(boolean allowEmptyDisplay) {
-        if (!allowEmptyDisplay && mTypedTimes.isEmpty()) {
+        if (!allowEmptyDisplay && mTypedCount == 0) {
             int hour = mTimePicker.getHours();
             int minute = mTimePicker.getMinutes();
             setHour(hour, true);
@@ -996,8 +1144,8 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
         int startIndex = 1;
         int minute = -1;
         int hour = -1;
-        for (int i = startIndex; i <= mTypedTimes.size(); i++) {
-            int val = getValFromKeyCode(mTypedTimes.get(mTypedTimes.size() - i));
+        for (int i = startIndex; i <= mTypedCount; i++) {
+            int val = mTypedTimes[mTypedCount - i];
             if (i == startIndex) {
                 minute = val;
             } else if (i == startIndex + 1) {
@@ -1019,110 +1167,93 @@ public class TimePickerDialog extends DialogFragment implements RadialPickerLayo
     }
 
     /**
-     * Create a tree for deciding what keys can legally be typed.
+     * Compile the grammar of typed times into a table, see {@link #TYPED_TRANSITIONS}.
      */
-    private void generateLegalTimesTree() {
-        // Create a quick cache of numbers to their keycodes.
-        int k0 = KeyEvent.KEYCODE_0;
-        int k1 = KeyEvent.KEYCODE_1;
-        int k2 = KeyEvent.KEYCODE_2;
-        int k3 = KeyEvent.KEYCODE_3;
-        int k4 = KeyEvent.KEYCODE_4;
-        int k5 = KeyEvent.KEYCODE_5;
-        int k6 = KeyEvent.KEYCODE_6;
-        int k7 = KeyEvent.KEYCODE_7;
-        int k8 = KeyEvent.KEYCODE_8;
-        int k9 = KeyEvent.KEYCODE_9;
-
-        // The root of the tree doesn't contain any numbers.
-        mLegalTimesTree = new Node();
-
-        // We'll be re-using these nodes, so we'll save them.
-        Node minuteFirstDigit = new Node(k0, k1, k2, k3, k4, k5);
-        Node minuteSecondDigit = new Node(k0, k1, k2, k3, k4, k5, k6, k7, k8, k9);
-        // The first digit must be followed by the second digit.
-        minuteFirstDigit.addChild(minuteSecondDigit);
-
-        // The first digit may be 0-1.
-        Node firstDigit = new Node(k0, k1);
-        mLegalTimesTree.addChild(firstDigit);
-
-        // When the first digit is 0-1, the second digit may be 0-5.
-        Node secondDigit = new Node(k0, k1, k2, k3, k4, k5);
-        firstDigit.addChild(secondDigit);
-        // We may now be followed by the first minute digit. E.g. 00:09, 15:58.
-        secondDigit.addChild(minuteFirstDigit);
-
-        // When the first digit is 0-1, and the second digit is 0-5, the third digit may be 6-9.
-        Node thirdDigit = new Node(k6, k7, k8, k9);
-        // The time must now be finished. E.g. 0:55, 1:08.
-        secondDigit.addChild(thirdDigit);
-
-        // When the first digit is 0-1, the second digit may be 6-9.
-        secondDigit = new Node(k6, k7, k8, k9);
-        firstDigit.addChild(secondDigit);
-        // We must now be followed by the first minute digit. E.g. 06:50, 18:20.
-        secondDigit.addChild(minuteFirstDigit);
-
-        // The first digit may be 2.
-        firstDigit = new Node(k2);
-        mLegalTimesTree.addChild(firstDigit);
-
-        // When the first digit is 2, the second digit may be 0-3.
-        secondDigit = new Node(k0, k1, k2, k3);
-        firstDigit.addChild(secondDigit);
-        // We must now be followed by the first minute digit. E.g. 20:50, 23:09.
-        secondDigit.addChild(minuteFirstDigit);
-
-        // When the first digit is 2, the second digit may be 4-5.
-        secondDigit = new Node(k4, k5);
-        firstDigit.addChild(secondDigit);
-        // We must now be followd by the last minute digit. E.g. 2:40, 2:53.
-        secondDigit.addChild(minuteSecondDigit);
-
-        // The first digit may be 3-9.
-        firstDigit = new Node(k3, k4, k5, k6, k7, k8, k9);
-        mLegalTimesTree.addChild(firstDigit);
-        // We must now be followed by the first minute digit. E.g. 3:57, 8:12.
-        firstDigit.addChild(minuteFirstDigit);
+    private static int[] buildTypedTransitions() {
+        int[] transitions = new int[11 * 10];
+        Arrays.fill(transitions, -1);
+
+        // 0: nothing typed. The first digit may be 0-1, 2 or 3-9.
+        addTypedTransitions(transitions, 0, 0, 1, 1);
+        addTypedTransitions(transitions, 0, 2, 2, 5);
+        addTypedTransitions(transitions, 0, 3, 9, 8);
+        // 1: 0-1 typed. When the second digit is 0-5 it is either an hour or a first minute
+        // digit, e.g. 15:58 or 0:55. When it is 6-9 it is an hour, e.g. 06:50.
+        addTypedTransitions(transitions, 1, 0, 5, 2);
+        addTypedTransitions(transitions, 1, 6, 9, 4);
+        // 2: 00-15 typed. Either followed by the first minute digit, e.g. 00:09, or the
+        // time is finished, e.g. 0:56.
+        addTypedTransitions(transitions, 2, 0, 5, 9);
+        addTypedTransitions(transitions, 2, 6, 9, 3);
+        // 3: the time is finished.
+        // 4: 06-19 typed, followed by the first minute digit.
+        addTypedTransitions(transitions, 4, 0, 5, 9);
+        // 5: 2 typed. 20-23 are hours, 24 and 25 are 2:4x and 2:5x.
+        addTypedTransitions(transitions, 5, 0, 3, 6);
+        addTypedTransitions(transitions, 5, 4, 5, 7);
+        // 6: 20-23 typed, followed by the first minute digit, e.g. 23:09.
+        addTypedTransitions(transitions, 6, 0, 5, 9);
+        // 7: 2:4 or 2:5 typed, followed by the last minute digit.
+        addTypedTransitions(transitions, 7, 0, 9, 10);
+        // 8: 3-9 typed, followed by the first minute digit, e.g. 3:57.
+        addTypedTransitions(transitions, 8, 0, 5, 9);
+        // 9: the first minute digit typed, followed by the last one.
+        addTypedTransitions(transitions, 9, 0, 9, 10);
+        // 10: the time is finished.
+        return transitions;
+    }
+
+    private static void addTypedTransitions(int[] transitions, int state, int fromDigit, int toDigit,
+                                            int nextState) {
+        for (int digit = fromDigit; digit <= toDigit; digit++) {
+            transitions[state * 10 + digit] = nextState;
+        }
     }
 
     /**
-     * Simple node class to be used for traversal to check for legal times.
-     * mLegalKeys represents the keys that can be typed to get to the node.
-     * mChildren are the children that can be reached from this node.
+     * Intersect the grammar with the limiter: type every time the limiter accepts in each of
+     * the ways the grammar allows and mark the prefixes of those which get through.
      */
-    private static class Node {
-        private int[] mLegalKeys;
-        private ArrayList<Node> mChildren;
-
-        public Node(int... legalKeys) {
-            mLegalKeys = legalKeys;
-            mChildren = new ArrayList<>();
+    private boolean[] buildLegalTypedPrefixes() {
+        boolean[] legal = new boolean[TYPED_PREFIX_OFFSETS[MAX_TYPED_KEYS] + 10000];
+        int[] digits = new int[MAX_TYPED_KEYS];
+        for (int hour = 0; hour < 24; hour++) {
+            for (int minute = 0; minute < 60; minute++) {
+                if (isOutOfRange(PackedTime.of(hour, minute), MINUTE_INDEX)) continue;
+
+                digits[0] = hour / 10;
+                digits[1] = hour % 10;
+                digits[2] = minute / 10;
+                digits[3] = minute % 10;
+                markLegalTypedPrefixes(legal, digits, 4);
+                if (hour < 10) {
+                    digits[0] = hour;
+                    digits[1] = minute / 10;
+                    digits[2] = minute % 10;
+                    markLegalTypedPrefixes(legal, digits, 3);
+                }
+            }
         }
+        return legal;
+    }
 
-        public void addChild(Node child) {
-            mChildren.add(child);
+    private static void markLegalTypedPrefixes(boolean[] legal, int[] digits, int count) {
+        int state = 0;
+        for (int i = 0; i < count; i++) {
+            state = TYPED_TRANSITIONS[state * 10 + digits[i]];
+            if (state == -1) return;
         }
-
-        public boolean containsKey(int key) {
-            for (int legalKey : mLegalKeys) {
-                if (legalKey == key) return true;
-            }
-            return false;
+        for (int i = 0; i <= count; i++) {
+            legal[typedPrefixIndex(digits, i)] = true;
         }
+    }
 
-        public Node canReach(int key) {
-            if (mChildren == null) {
-                return null;
-            }
-            for (Node child : mChildren) {
-                if (child.containsKey(key)) {
-                    return child;
-                }
-            }
-            return null;
+    private static int typedPrefixIndex(int[] digits, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value * 10 + digits[i];
         }
+        return TYPED_PREFIX_OFFSETS[count] + value;
     }
 
     private class KeyboardListener implements View.OnKeyListener {
@@ -16,14 +16,14 @@ import java.lang.annotation.RetentionPolicy;
  * The time input is expected to use 24 hour mode.
  * Fields are modulo'd into their correct ranges.
  * It does not handle timezones.
+ * Internally the time is kept packed as seconds of the day, see {@link PackedTime}.
  */
 @SuppressWarnings("WeakerAccess")
 public class Timepoint implements Parcelable, Comparable<Timepoint> {
     public static final int HOUR = 0;
     public static final int MINUTE = 1;
 
-    private int hour;
-    private int minute;
+    private int seconds;
 
     @IntDef({HOUR, MINUTE})
     @Retention(RetentionPolicy.SOURCE)
@@ -31,13 +31,12 @@ public class Timepoint implements Parcelable, Comparable<Timepoint> {
     }
 
     public Timepoint(Timepoint time) {
-        this(time.hour, time.minute);
+        this.seconds = time.seconds;
     }
 
     public Timepoint(@IntRange(from = 0, to = 23) int hour,
                      @IntRange(from = 0, to = 59) int minute) {
-        this.hour = hour % 24;
-        this.minute = minute % 60;
+        this.seconds = PackedTime.of(hour, minute);
     }
 
     public Timepoint(@IntRange(from = 0, to = 23) int hour) {
@@ -45,43 +44,41 @@ public class Timepoint implements Parcelable, Comparable<Timepoint> {
     }
 
     public Timepoint(Parcel in) {
-        hour = in.readInt();
-        minute = in.readInt();
+        int hour = in.readInt();
+        int minute = in.readInt();
+        seconds = PackedTime.of(hour, minute);
     }
 
     @IntRange(from = 0, to = 23)
     public int getHour() {
-        return hour;
+        return PackedTime.getHour(seconds);
     }
 
     @IntRange(from = 0, to = 59)
     public int getMinute() {
-        return minute;
+        return PackedTime.getMinute(seconds);
     }
 
     public void add(@TYPE int type, int value) {
-        if (type == MINUTE) value *= 60;
-        if (type == HOUR) value *= 3600;
-        value += toSeconds();
-
-        switch (type) {
-            case MINUTE:
-                minute = (value % 3600) / 60;
-            case HOUR:
-                hour = (value / 3600) % 24;
-        }
+        seconds = PackedTime.add(seconds, type, value);
     }
 
     public int get(@TYPE int type) {
-        if (MINUTE == type) {
-            return getMinute();
-        } else {
-            return getHour();
-        }
+        return PackedTime.get(seconds, type);
     }
 
+    /**
+     * @return the time packed as seconds of the day, see {@link PackedTime}
+     */
     public int toSeconds() {
-        return 3600 * hour + 60 * minute;
+        return seconds;
+    }
+
+    /**
+     * Overwrite the time, for reusing a scratch instance in hot paths.
+     */
+    void set(int seconds) {
+        this.seconds = seconds;
     }
 
     @Override
@@ -100,26 +97,18 @@ public class Timepoint implements Parcelable, Comparable<Timepoint> {
     }
 
     public boolean equals(@Nullable Timepoint time, @TYPE int resolution) {
-        if (time == null) return false;
-        boolean output = true;
-        switch (resolution) {
-            case MINUTE:
-                output = output && time.getMinute() == getMinute();
-            case HOUR:
-                output = output && time.getHour() == getHour();
-        }
-        return output;
+        return time != null && PackedTime.equals(seconds, time.seconds, resolution);
     }
 
     @Override
     public int compareTo(@NonNull Timepoint t) {
-        return hashCode() - t.hashCode();
+        return seconds - t.seconds;
     }
 
     @Override
     public void writeToParcel(Parcel out, int flags) {
-        out.writeInt(hour);
-        out.writeInt(minute);
+        out.writeInt(getHour());
+        out.writeInt(getMinute());
     }
 
     @Override
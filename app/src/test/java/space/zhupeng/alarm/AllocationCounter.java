@@ -0,0 +1,36 @@
+package space.zhupeng.alarm;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes the current thread allocates on the heap, for the tests which check that a
+ * hot path allocates nothing. Needs a HotSpot JVM, as the unit tests run on.
+ */
+public final class AllocationCounter {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long mStart;
+
+    private AllocationCounter() {
+        mStart = allocatedBytes();
+    }
+
+    public static AllocationCounter start() {
+        // The first query may set up the counter itself.
+        allocatedBytes();
+        return new AllocationCounter();
+    }
+
+    /**
+     * @return the bytes allocated by this thread since {@link #start()}
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes() - mStart;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
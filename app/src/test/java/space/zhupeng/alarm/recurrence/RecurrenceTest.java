@@ -0,0 +1,206 @@
+package space.zhupeng.alarm.recurrence;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import space.zhupeng.alarm.AllocationCounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link ZoneOffsetTable} against {@link TimeZone} and the next occurrences of
+ * {@link Recurrence} around the daylight saving transitions of the coming year.
+ */
+public class RecurrenceTest {
+
+    private static final long HOUR_MILLIS = 60 * Recurrence.MINUTE_MILLIS;
+    private static final long YEAR_MILLIS = 365 * Recurrence.DAY_MILLIS;
+
+    private static final String[] ZONES = {"America/New_York", "Europe/London",
+            "Australia/Lord_Howe", "America/Santiago", "Asia/Kolkata", "UTC"};
+
+    @Test
+    public void getOffset_matchesTimeZone() {
+        long now = System.currentTimeMillis();
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+            for (long t = now - YEAR_MILLIS / 2; t < now + 2 * YEAR_MILLIS; t += HOUR_MILLIS / 4) {
+                assertEquals(id + " at " + t, zone.getOffset(t), table.getOffset(t));
+            }
+            long t = now;
+            while ((t = transitionAfter(zone, t, now + 2 * YEAR_MILLIS)) > 0) {
+                assertEquals(id + " before " + t, zone.getOffset(t - 1), table.getOffset(t - 1));
+                assertEquals(id + " at " + t, zone.getOffset(t), table.getOffset(t));
+            }
+        }
+    }
+
+    @Test
+    public void nextOccurrence_inGap_movesForwardByTheGap() {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+        long transition = transition(zone, true);
+        int before = zone.getOffset(transition - 1);
+        int gap = zone.getOffset(transition) - before;
+
+        // Half way into the hour which the clocks skip, e.g. 02:30 when 02:00 becomes 03:00.
+        long local = transition + before + gap / 2;
+        int hour = hourOf(local);
+        int minute = minuteOf(local);
+        long next = Recurrence.nextOccurrence(hour, minute, Recurrence.EVERY_DAY,
+                transition - 12 * HOUR_MILLIS, table);
+        assertEquals(local - before, next);
+        // Which reads the same time of day plus the gap on the new clock.
+        assertEquals(hour * 60 + minute + gap / Recurrence.MINUTE_MILLIS,
+                hourOf(next + zone.getOffset(next)) * 60 + minuteOf(next + zone.getOffset(next)));
+
+        // The following day is back to normal.
+        long following = Recurrence.nextOccurrence(hour, minute, Recurrence.EVERY_DAY, next, table);
+        assertEquals(local + Recurrence.DAY_MILLIS - zone.getOffset(transition), following);
+    }
+
+    @Test
+    public void nextOccurrence_inOverlap_firesOnceAtTheEarlierInstant() {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+        long transition = transition(zone, false);
+        int before = zone.getOffset(transition - 1);
+        int after = zone.getOffset(transition);
+        long overlap = before - after;
+
+        // Half way into the hour which the clocks repeat, e.g. 01:30 when 02:00 becomes 01:00.
+        long local = transition + after + overlap / 2;
+        int hour = hourOf(local);
+        int minute = minuteOf(local);
+        long next = Recurrence.nextOccurrence(hour, minute, Recurrence.EVERY_DAY,
+                transition - 12 * HOUR_MILLIS, table);
+        assertEquals(local - before, next);
+        assertEquals(local - before, table.toUtc(local));
+
+        // The second time the clock reads that time is not another occurrence.
+        long following = Recurrence.nextOccurrence(hour, minute, Recurrence.EVERY_DAY, next, table);
+        assertEquals(local + Recurrence.DAY_MILLIS - after, following);
+    }
+
+    @Test
+    public void nextOccurrence_weeklyAcrossGap() {
+        TimeZone zone = TimeZone.getTimeZone("Europe/London");
+        ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+        long transition = transition(zone, true);
+        int before = zone.getOffset(transition - 1);
+        long local = transition + before + (zone.getOffset(transition) - before) / 2;
+        int day = Recurrence.dayOfWeek(transition, table);
+
+        // A week before, the weekly alarm on the day of the transition lands in the gap.
+        long next = Recurrence.nextOccurrence(hourOf(local), minuteOf(local),
+                Recurrence.dayMask(day), transition - 7 * Recurrence.DAY_MILLIS + HOUR_MILLIS, table);
+        assertEquals(local - before, next);
+        assertEquals(day, Recurrence.dayOfWeek(next, table));
+    }
+
+    @Test
+    public void nextOccurrence_dailyForAYear() {
+        long now = System.currentTimeMillis();
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+            for (int minuteOfDay = 0; minuteOfDay < 24 * 60; minuteOfDay += 15) {
+                int hour = minuteOfDay / 60;
+                int minute = minuteOfDay % 60;
+                long previous = now;
+                int count = 0;
+                while (previous < now + YEAR_MILLIS) {
+                    long next = Recurrence.nextOccurrence(hour, minute, Recurrence.EVERY_DAY,
+                            previous, table);
+                    String at = id + " " + hour + ":" + minute + " after " + previous;
+                    assertTrue(at, next > previous);
+                    if (count > 0) {
+                        // Never skipped, never twice on one day.
+                        assertTrue(at, next - previous >= 23 * HOUR_MILLIS);
+                        assertTrue(at, next - previous <= 25 * HOUR_MILLIS);
+                    }
+                    // The alarm time on the clock, or on the clock before a forward transition.
+                    assertTrue(at, timeOfDay(next + zone.getOffset(next)) == minuteOfDay
+                            || timeOfDay(next + zone.getOffset(next - 12 * HOUR_MILLIS)) == minuteOfDay);
+                    previous = next;
+                    count++;
+                }
+                assertTrue(id, count >= 365);
+            }
+        }
+    }
+
+    @Test
+    public void nextOccurrence_allocatesNothing() {
+        ZoneOffsetTable table = ZoneOffsetTable.of(TimeZone.getTimeZone("America/New_York"));
+        long now = System.currentTimeMillis();
+        long sum = 0;
+        // Warm up, so the measured calls run compiled.
+        for (int i = 0; i < 200000; i++) {
+            sum += Recurrence.nextOccurrence(i % 24, i % 60, i % 0x80, now + i * 60000L, table);
+        }
+        AllocationCounter counter = AllocationCounter.start();
+        for (int i = 0; i < 1000000; i++) {
+            sum += Recurrence.nextOccurrence(i % 24, i % 60, i % 0x80, now + i * 60000L, table);
+        }
+        assertEquals(0, counter.getAllocatedBytes());
+        assertTrue(sum != 0);
+    }
+
+    @Test
+    public void nextOccurrence_emptyMask() {
+        ZoneOffsetTable table = ZoneOffsetTable.of(TimeZone.getTimeZone("UTC"));
+        assertEquals(-1, Recurrence.nextOccurrence(7, 0, 0, System.currentTimeMillis(), table));
+    }
+
+    /**
+     * @return the first transition within a year from now at which the offset goes up
+     * ({@code forward}) or down
+     */
+    private static long transition(TimeZone zone, boolean forward) {
+        long now = System.currentTimeMillis();
+        long t = now;
+        while ((t = transitionAfter(zone, t, now + YEAR_MILLIS)) > 0) {
+            if ((zone.getOffset(t) > zone.getOffset(t - 1)) == forward) return t;
+        }
+        throw new AssertionError("No transition in " + zone.getID());
+    }
+
+    /**
+     * @return the first instant after {@code from} with another offset than the instant before
+     * it, or -1 if there is none before {@code until}
+     */
+    private static long transitionAfter(TimeZone zone, long from, long until) {
+        int offset = zone.getOffset(from);
+        for (long t = from + HOUR_MILLIS; t < until; t += HOUR_MILLIS) {
+            if (zone.getOffset(t) == offset) continue;
+            long lo = t - HOUR_MILLIS;
+            long hi = t;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (zone.getOffset(mid) == offset) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            return hi;
+        }
+        return -1;
+    }
+
+    private static int timeOfDay(long localMillis) {
+        return (int) (Recurrence.floorMod(localMillis, Recurrence.DAY_MILLIS) / Recurrence.MINUTE_MILLIS);
+    }
+
+    private static int hourOf(long localMillis) {
+        return timeOfDay(localMillis) / 60;
+    }
+
+    private static int minuteOf(long localMillis) {
+        return timeOfDay(localMillis) % 60;
+    }
+}
@@ -0,0 +1,196 @@
+package space.zhupeng.alarm.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import space.zhupeng.alarm.AllocationCounter;
+import space.zhupeng.alarm.recurrence.Recurrence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes alarms to an {@link AlarmRecordFile}, maps it back and checks every field, and that
+ * reading the fixed-width fields allocates nothing.
+ */
+public class AlarmRecordFileTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("alarms", ".rec");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void roundTrip() {
+        List<Alarm> alarms = Arrays.asList(
+                new Alarm.Builder().id(1).flag(Alarm.ONCE).time(0, 0).soundOrVibrator(0)
+                        .triggerAt(1000L).build(),
+                new Alarm.Builder().id(42).flag(Alarm.DAILY).time(7, 30).tips("Wake up")
+                        .soundOrVibrator(1).triggerAt(1500000000000L).exact(false).build(),
+                new Alarm.Builder().id(Integer.MAX_VALUE).flag(Alarm.WEEKLY).time(23, 59).week(7)
+                        .tips("").soundOrVibrator(2).triggerAt(Long.MAX_VALUE).build(),
+                new Alarm.Builder().id(-3).flag(Alarm.WEEKLY).time(12, 5).week(3)
+                        .tips("起床 ⏰").triggerAt(1600000000000L).exact(false).build());
+        AlarmRecordFile.write(mFile, alarms);
+
+        AlarmRecordFile records = AlarmRecordFile.map(mFile);
+        assertEquals(alarms.size(), records.getCount());
+        for (int i = 0; i < alarms.size(); i++) {
+            Alarm alarm = alarms.get(i);
+            String at = alarm.toString();
+            assertEquals(at, alarm.getId(), records.getId(i));
+            assertEquals(at, alarm.getTriggerAt(), records.getTriggerAt(i));
+            assertEquals(at, alarm.getHour(), records.getHour(i));
+            assertEquals(at, alarm.getMinute(), records.getMinute(i));
+            assertEquals(at, alarm.getWeek(), records.getWeek(i));
+            assertEquals(at, alarm.getDayMask(), records.getDayMask(i));
+            assertEquals(at, alarm.getFlag(), records.getFlag(i));
+            assertEquals(at, alarm.getSoundOrVibrator(), records.getSoundOrVibrator(i));
+            assertEquals(at, alarm.isExact(), records.isExact(i));
+            assertEquals(at, alarm.getTips(), records.getLabel(i));
+            assertEquals(at, i, records.indexOf(alarm.getId()));
+        }
+        assertNull(records.getLabel(0));
+        assertEquals(-1, records.getLabelLength(0));
+        assertEquals(Recurrence.dayMask(3), records.getDayMask(3));
+        assertEquals(-1, records.indexOf(7));
+    }
+
+    @Test
+    public void roundTrip_manyAlarms() {
+        List<Alarm> alarms = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            alarms.add(new Alarm.Builder().id(i).flag(i % 3).time(i % 24, i % 60).week(i % 8)
+                    .tips(i % 5 == 0 ? null : "alarm " + i).soundOrVibrator(i % 3)
+                    .triggerAt(1000L * i).exact(i % 2 == 0).build());
+        }
+        AlarmRecordFile.write(mFile, alarms);
+
+        AlarmRecordFile records = AlarmRecordFile.map(mFile);
+        assertEquals(1000, records.getCount());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, records.getId(i));
+            assertEquals(1000L * i, records.getTriggerAt(i));
+            assertEquals(i % 3, records.getFlag(i));
+            assertEquals(i % 3, records.getSoundOrVibrator(i));
+            assertEquals(i % 2 == 0, records.isExact(i));
+            assertEquals(i % 5 == 0 ? null : "alarm " + i, records.getLabel(i));
+        }
+    }
+
+    @Test
+    public void map_emptyMissingAndCorrupt() throws IOException {
+        assertEquals(0, AlarmRecordFile.map(mFile).getCount());
+
+        AlarmRecordFile.write(mFile, Collections.<Alarm>emptyList());
+        assertEquals(0, AlarmRecordFile.map(mFile).getCount());
+
+        writeBytes(new byte[]{1, 2, 3});
+        assertEquals(0, AlarmRecordFile.map(mFile).getCount());
+
+        // A header which promises more records than the file holds.
+        AlarmRecordFile.write(mFile, Collections.singletonList(
+                new Alarm.Builder().id(1).time(8, 0).triggerAt(1L).build()));
+        byte[] bytes = readBytes();
+        writeBytes(Arrays.copyOf(bytes, AlarmRecordFile.HEADER_SIZE));
+        assertEquals(0, AlarmRecordFile.map(mFile).getCount());
+
+        bytes[0] ^= 1;
+        writeBytes(bytes);
+        assertEquals(0, AlarmRecordFile.map(mFile).getCount());
+    }
+
+    @Test
+    public void map_keepsItsSnapshotWhenRewritten() {
+        AlarmRecordFile.write(mFile, Collections.singletonList(
+                new Alarm.Builder().id(1).time(8, 0).triggerAt(100L).build()));
+        AlarmRecordFile before = AlarmRecordFile.map(mFile);
+
+        AlarmRecordFile.write(mFile, Arrays.asList(
+                new Alarm.Builder().id(2).time(9, 0).triggerAt(50L).build(),
+                new Alarm.Builder().id(1).time(8, 0).triggerAt(100L).build()));
+        assertEquals(1, before.getCount());
+        assertEquals(1, before.getId(0));
+        assertEquals(2, AlarmRecordFile.map(mFile).getCount());
+        assertEquals(2, AlarmRecordFile.map(mFile).getId(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getId_outOfRange() {
+        AlarmRecordFile.write(mFile, Collections.<Alarm>emptyList());
+        AlarmRecordFile.map(mFile).getId(0);
+    }
+
+    @Test
+    public void reads_allocateNothing() {
+        List<Alarm> alarms = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            alarms.add(new Alarm.Builder().id(i).flag(Alarm.DAILY).time(i % 24, i % 60)
+                    .tips("alarm " + i).triggerAt(1000L * i).build());
+        }
+        AlarmRecordFile.write(mFile, alarms);
+        AlarmRecordFile records = AlarmRecordFile.map(mFile);
+
+        long sum = readAll(records, 2000);
+        AllocationCounter counter = AllocationCounter.start();
+        sum += readAll(records, 10000);
+        assertEquals(0, counter.getAllocatedBytes());
+        assertFalse(sum == 0);
+    }
+
+    private static long readAll(AlarmRecordFile records, int rounds) {
+        long sum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < records.getCount(); i++) {
+                sum += records.getId(i) + records.getTriggerAt(i) + records.getHour(i)
+                        + records.getMinute(i) + records.getWeek(i) + records.getDayMask(i)
+                        + records.getFlag(i) + records.getSoundOrVibrator(i)
+                        + (records.isExact(i) ? 1 : 0) + records.getLabelOffset(i)
+                        + records.getLabelLength(i);
+            }
+            sum += records.indexOf(round % 100);
+        }
+        return sum;
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[(int) mFile.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(mFile));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
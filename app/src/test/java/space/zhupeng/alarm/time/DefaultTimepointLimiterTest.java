@@ -0,0 +1,372 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import space.zhupeng.alarm.AllocationCounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static space.zhupeng.alarm.time.TimePickerDialog.HOUR_INDEX;
+import static space.zhupeng.alarm.time.TimePickerDialog.MINUTE_INDEX;
+
+/**
+ * Checks the range checks and the nearest time tables of {@link DefaultTimepointLimiter} against
+ * the TreeSet implementation they replaced, for every minute of the day, index, type and
+ * resolution.
+ */
+public class DefaultTimepointLimiterTest {
+
+    private static final int[] RESOLUTIONS = {Timepoint.HOUR, Timepoint.MINUTE};
+    // -1 rounds both fields, which is what the picker asks for
+    private static final int[] TYPES = {-1, Timepoint.HOUR, Timepoint.MINUTE};
+
+    @Test
+    public void limits_unrestricted() {
+        assertSameLimits(new Limits());
+    }
+
+    @Test
+    public void limits_minAndMax() {
+        Limits limits = new Limits();
+        limits.setMinTime(new Timepoint(7, 30));
+        limits.setMaxTime(new Timepoint(19, 45));
+        assertSameLimits(limits);
+    }
+
+    @Test
+    public void limits_selectable() {
+        Limits limits = new Limits();
+        limits.setSelectableTimes(new Timepoint[]{
+                new Timepoint(0, 0), new Timepoint(8, 15), new Timepoint(8, 45),
+                new Timepoint(12, 0), new Timepoint(23, 59)});
+        assertSameLimits(limits);
+    }
+
+    @Test
+    public void limits_disabled() {
+        Limits limits = new Limits();
+        limits.setDisabledTimes(new Timepoint[]{
+                new Timepoint(0, 0), new Timepoint(9, 0), new Timepoint(9, 1),
+                new Timepoint(9, 59), new Timepoint(23, 30)});
+        assertSameLimits(limits);
+    }
+
+    @Test
+    public void limits_everyMinuteOfAnHourDisabled() {
+        Timepoint[] disabled = new Timepoint[60];
+        for (int minute = 0; minute < 60; minute++) disabled[minute] = new Timepoint(14, minute);
+        Limits limits = new Limits();
+        limits.setDisabledTimes(disabled);
+        assertSameLimits(limits);
+    }
+
+    @Test
+    public void limits_selectableAndDisabled() {
+        Limits limits = new Limits();
+        limits.setSelectableTimes(new Timepoint[]{
+                new Timepoint(6, 0), new Timepoint(6, 30), new Timepoint(7, 0), new Timepoint(18, 0)});
+        limits.setDisabledTimes(new Timepoint[]{new Timepoint(6, 30), new Timepoint(18, 0)});
+        assertSameLimits(limits);
+    }
+
+    @Test
+    public void limits_random() {
+        Random random = new Random(1);
+        for (int i = 0; i < 40; i++) {
+            Limits limits = new Limits();
+            if (random.nextInt(3) == 0) {
+                limits.setMinTime(new Timepoint(random.nextInt(12), random.nextInt(60)));
+            }
+            if (random.nextInt(3) == 0) {
+                limits.setMaxTime(new Timepoint(12 + random.nextInt(12), random.nextInt(60)));
+            }
+            if (random.nextBoolean()) {
+                limits.setDisabledTimes(randomTimes(random, random.nextInt(1400)));
+            }
+            if (random.nextBoolean()) {
+                limits.setSelectableTimes(randomTimes(random, random.nextInt(200)));
+            }
+            assertSameLimits(limits);
+        }
+    }
+
+    private static Timepoint[] randomTimes(Random random, int count) {
+        Timepoint[] times = new Timepoint[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = new Timepoint(random.nextInt(24), random.nextInt(60));
+        }
+        return times;
+    }
+
+    @Test
+    public void roundToNearest_tablesBuiltWhenConfigured() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setDisabledTimes(randomTimes(new Random(4), 1000));
+        limiter.setSelectableTimes(randomTimes(new Random(5), 100));
+
+        // The first drag after the dialog opened finds every table ready.
+        AllocationCounter counter = AllocationCounter.start();
+        int sum = 0;
+        for (int time = 0; time < PackedTime.SECONDS_PER_DAY; time += PackedTime.SECONDS_PER_MINUTE) {
+            for (int type : TYPES) {
+                for (int resolution : RESOLUTIONS) {
+                    sum += limiter.roundToNearest(time, type, resolution);
+                }
+            }
+        }
+        assertEquals(0, counter.getAllocatedBytes());
+        assertTrue(sum > 0);
+    }
+
+    @Test
+    public void isOutOfRange_allocatesNothing() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setMinTime(new Timepoint(6, 0));
+        limiter.setSelectableTimes(randomTimes(new Random(2), 300));
+        limiter.setDisabledTimes(randomTimes(new Random(3), 100));
+
+        int outOfRange = countOutOfRange(limiter, 20);
+        AllocationCounter counter = AllocationCounter.start();
+        outOfRange += countOutOfRange(limiter, 200);
+        assertEquals(0, counter.getAllocatedBytes());
+        assertTrue(outOfRange > 0);
+    }
+
+    private static int countOutOfRange(DefaultTimepointLimiter limiter, int rounds) {
+        int count = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int time = 0; time < PackedTime.SECONDS_PER_DAY; time += PackedTime.SECONDS_PER_MINUTE) {
+                for (int index = -1; index <= MINUTE_INDEX; index++) {
+                    for (int resolution : RESOLUTIONS) {
+                        if (limiter.isOutOfRange(time, index, resolution)) count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void assertSameLimits(Limits limits) {
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            Timepoint time = new Timepoint(minute / 60, minute % 60);
+            for (int index = -1; index <= MINUTE_INDEX; index++) {
+                for (int resolution : RESOLUTIONS) {
+                    assertEquals(limits + " " + time.getHour() + ":" + time.getMinute()
+                                    + " index " + index + " resolution " + resolution,
+                            limits.mReference.isOutOfRange(time, index, resolution),
+                            limits.mLimiter.isOutOfRange(time, index, resolution));
+                }
+            }
+            for (int type : TYPES) {
+                for (int resolution : RESOLUTIONS) {
+                    Timepoint expected = limits.mReference.roundToNearest(new Timepoint(time), type, resolution);
+                    Timepoint actual = limits.mLimiter.roundToNearest(new Timepoint(time), type, resolution);
+                    assertEquals(limits + " " + time.getHour() + ":" + time.getMinute()
+                                    + " type " + type + " resolution " + resolution,
+                            expected.toSeconds(), actual.toSeconds());
+                }
+            }
+        }
+    }
+
+    /**
+     * The same restrictions applied to the limiter under test and to the reference.
+     */
+    private static final class Limits {
+        final DefaultTimepointLimiter mLimiter = new DefaultTimepointLimiter();
+        final TreeSetLimiter mReference = new TreeSetLimiter();
+        private final StringBuilder mDescription = new StringBuilder("limiter");
+
+        void setMinTime(Timepoint time) {
+            mLimiter.setMinTime(time);
+            mReference.mMinTime = time;
+            mDescription.append(" min ").append(time.toSeconds());
+        }
+
+        void setMaxTime(Timepoint time) {
+            mLimiter.setMaxTime(time);
+            mReference.mMaxTime = time;
+            mDescription.append(" max ").append(time.toSeconds());
+        }
+
+        void setSelectableTimes(Timepoint[] times) {
+            mLimiter.setSelectableTimes(times);
+            mReference.mSelectableTimes.addAll(Arrays.asList(times));
+            mDescription.append(" selectable ").append(times.length);
+        }
+
+        void setDisabledTimes(Timepoint[] times) {
+            mLimiter.setDisabledTimes(times);
+            mReference.mDisabledTimes.addAll(Arrays.asList(times));
+            mDescription.append(" disabled ").append(times.length);
+        }
+
+        @Override
+        public String toString() {
+            return mDescription.toString();
+        }
+    }
+
+    /**
+     * DefaultTimepointLimiter as it was when it kept its times in TreeSets.
+     */
+    private static final class TreeSetLimiter {
+        final TreeSet<Timepoint> mSelectableTimes = new TreeSet<>();
+        final TreeSet<Timepoint> mDisabledTimes = new TreeSet<>();
+        Timepoint mMinTime;
+        Timepoint mMaxTime;
+
+        private TreeSet<Timepoint> getExclusiveSelectableTimes() {
+            TreeSet<Timepoint> output = new TreeSet<>(mSelectableTimes);
+            output.removeAll(mDisabledTimes);
+            return output;
+        }
+
+        boolean isOutOfRange(Timepoint current, int index, int resolution) {
+            TreeSet<Timepoint> exclusiveSelectableTimes = getExclusiveSelectableTimes();
+            if (index == HOUR_INDEX) {
+                if (mMinTime != null && mMinTime.getHour() > current.getHour()) return true;
+
+                if (mMaxTime != null && mMaxTime.getHour() + 1 <= current.getHour()) return true;
+
+                if (!exclusiveSelectableTimes.isEmpty()) {
+                    Timepoint ceil = exclusiveSelectableTimes.ceiling(current);
+                    Timepoint floor = exclusiveSelectableTimes.floor(current);
+                    return !(current.equals(ceil, Timepoint.HOUR) || current.equals(floor, Timepoint.HOUR));
+                }
+
+                if (!mDisabledTimes.isEmpty() && resolution == Timepoint.HOUR) {
+                    Timepoint ceil = mDisabledTimes.ceiling(current);
+                    Timepoint floor = mDisabledTimes.floor(current);
+                    return current.equals(ceil, Timepoint.HOUR) || current.equals(floor, Timepoint.HOUR);
+                }
+
+                return false;
+            } else if (index == MINUTE_INDEX) {
+                if (mMinTime != null && mMinTime.compareTo(current) > 0) return true;
+
+                if (mMaxTime != null && mMaxTime.compareTo(current) < 0) return true;
+
+                if (!exclusiveSelectableTimes.isEmpty()) {
+                    Timepoint ceil = exclusiveSelectableTimes.ceiling(current);
+                    Timepoint floor = exclusiveSelectableTimes.floor(current);
+                    return !(current.equals(ceil, Timepoint.MINUTE) || current.equals(floor, Timepoint.MINUTE));
+                }
+
+                if (!mDisabledTimes.isEmpty() && resolution == Timepoint.MINUTE) {
+                    Timepoint ceil = mDisabledTimes.ceiling(current);
+                    Timepoint floor = mDisabledTimes.floor(current);
+                    return current.equals(ceil, Timepoint.MINUTE) || current.equals(floor, Timepoint.MINUTE);
+                }
+
+                return false;
+            }
+
+            if (mMinTime != null && mMinTime.compareTo(current) > 0) return true;
+
+            if (mMaxTime != null && mMaxTime.compareTo(current) < 0) return true;
+
+            if (!exclusiveSelectableTimes.isEmpty()) return !exclusiveSelectableTimes.contains(current);
+
+            return mDisabledTimes.contains(current);
+        }
+
+        Timepoint roundToNearest(Timepoint time, int type, int resolution) {
+            if (mMinTime != null && mMinTime.compareTo(time) > 0) return mMinTime;
+
+            if (mMaxTime != null && mMaxTime.compareTo(time) < 0) return mMaxTime;
+
+            TreeSet<Timepoint> exclusiveSelectableTimes = getExclusiveSelectableTimes();
+            if (!exclusiveSelectableTimes.isEmpty()) {
+                Timepoint floor = exclusiveSelectableTimes.floor(time);
+                Timepoint ceil = exclusiveSelectableTimes.ceiling(time);
+
+                if (floor == null || ceil == null) {
+                    Timepoint t = floor == null ? ceil : floor;
+                    if (t.getHour() != time.getHour()) return time;
+                    if (type == Timepoint.MINUTE && t.getMinute() != time.getMinute()) return time;
+                    return t;
+                }
+
+                if (type == Timepoint.HOUR) {
+                    if (floor.getHour() != time.getHour() && ceil.getHour() == time.getHour())
+                        return ceil;
+                    if (floor.getHour() == time.getHour() && ceil.getHour() != time.getHour())
+                        return floor;
+                    if (floor.getHour() != time.getHour() && ceil.getHour() != time.getHour())
+                        return time;
+                }
+
+                if (type == Timepoint.MINUTE) {
+                    if (floor.getHour() != time.getHour() && ceil.getHour() != time.getHour())
+                        return time;
+                    if (floor.getHour() != time.getHour() && ceil.getHour() == time.getHour()) {
+                        return ceil.getMinute() == time.getMinute() ? ceil : time;
+                    }
+                    if (floor.getHour() == time.getHour() && ceil.getHour() != time.getHour()) {
+                        return floor.getMinute() == time.getMinute() ? floor : time;
+                    }
+                    if (floor.getMinute() != time.getMinute() && ceil.getMinute() == time.getMinute())
+                        return ceil;
+                    if (floor.getMinute() == time.getMinute() && ceil.getMinute() != time.getMinute())
+                        return floor;
+                    if (floor.getMinute() != time.getMinute() && ceil.getMinute() != time.getMinute())
+                        return time;
+                }
+
+                int floorDist = Math.abs(time.compareTo(floor));
+                int ceilDist = Math.abs(time.compareTo(ceil));
+
+                return floorDist < ceilDist ? floor : ceil;
+            }
+
+            if (!mDisabledTimes.isEmpty()) {
+                if (type == resolution) return time;
+
+                Timepoint ceil = mDisabledTimes.ceiling(time);
+                Timepoint floor = mDisabledTimes.floor(time);
+                if (time.equals(ceil, resolution) || time.equals(floor, resolution))
+                    return searchValidTimePoint(time, type, resolution);
+                return time;
+            }
+
+            return time;
+        }
+
+        private Timepoint searchValidTimePoint(Timepoint time, int type, int resolution) {
+            Timepoint forward = new Timepoint(time);
+            Timepoint backward = new Timepoint(time);
+            int iteration = 0;
+            int resolutionMultiplier = 1;
+            if (resolution == Timepoint.MINUTE) resolutionMultiplier = 60;
+
+            while (iteration < 24 * resolutionMultiplier) {
+                iteration++;
+                forward.add(resolution, 1);
+                backward.add(resolution, -1);
+
+                if (forward.get(type) == time.get(type)) {
+                    Timepoint forwardCeil = mDisabledTimes.ceiling(forward);
+                    Timepoint forwardFloor = mDisabledTimes.floor(forward);
+                    if (!forward.equals(forwardCeil, resolution) && !forward.equals(forwardFloor, resolution))
+                        return forward;
+                }
+
+                if (backward.get(type) == time.get(type)) {
+                    Timepoint backwardCeil = mDisabledTimes.ceiling(backward);
+                    Timepoint backwardFloor = mDisabledTimes.floor(backward);
+                    if (!backward.equals(backwardCeil, resolution) && !backward.equals(backwardFloor, resolution))
+                        return backward;
+                }
+
+                if (backward.get(type) != time.get(type) && forward.get(type) != time.get(type))
+                    break;
+            }
+            return time;
+        }
+    }
+}
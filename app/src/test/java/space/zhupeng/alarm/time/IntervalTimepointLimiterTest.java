@@ -0,0 +1,216 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static space.zhupeng.alarm.time.TimePickerDialog.HOUR_INDEX;
+import static space.zhupeng.alarm.time.TimePickerDialog.MINUTE_INDEX;
+
+/**
+ * Checks {@link IntervalTimepointLimiter} against a plain array of the selectable minutes, and its
+ * rounding and range checks against a {@link DefaultTimepointLimiter} with the same selectable
+ * times.
+ */
+public class IntervalTimepointLimiterTest {
+
+    private static final int MINUTES = MinuteBitmap.MINUTES_PER_DAY;
+    private static final int[] TYPES = {-1, Timepoint.HOUR, Timepoint.MINUTE};
+
+    @Test
+    public void range() {
+        assertSelectable(steps(8 * 60, 18 * 60, 5), IntervalTimepointLimiter.range(
+                new Timepoint(8, 0), new Timepoint(18, 0), 5));
+        // The end is only selectable when it is a whole number of steps after the start.
+        assertSelectable(steps(8 * 60, 18 * 60 - 7, 15), IntervalTimepointLimiter.range(
+                new Timepoint(8, 0), new Timepoint(17, 53), 15));
+        assertSelectable(steps(12 * 60, 12 * 60, 1), IntervalTimepointLimiter.range(
+                new Timepoint(12, 0), new Timepoint(12, 0), 30));
+        assertSelectable(steps(0, MINUTES - 1, 1), IntervalTimepointLimiter.all());
+        assertEquals(1, IntervalTimepointLimiter.all().getRangeCount());
+    }
+
+    @Test
+    public void range_wrapsAroundMidnight() {
+        IntervalTimepointLimiter limiter = IntervalTimepointLimiter.range(
+                new Timepoint(22, 0), new Timepoint(6, 0), 30);
+        assertSelectable(or(steps(22 * 60, MINUTES - 1, 30), steps(0, 6 * 60, 30)), limiter);
+        assertEquals(2, limiter.getRangeCount());
+
+        // Steps are counted from the start across midnight, 23:50 + 25 is 00:15.
+        assertSelectable(or(steps(23 * 60 + 50, MINUTES - 1, 25), steps(15, 60, 25)),
+                IntervalTimepointLimiter.range(new Timepoint(23, 50), new Timepoint(1, 0), 25));
+
+        // The step reaches past the end, only the part before midnight is left.
+        assertSelectable(steps(23 * 60, MINUTES - 1, 45), IntervalTimepointLimiter.range(
+                new Timepoint(23, 0), new Timepoint(0, 10), 45));
+    }
+
+    @Test
+    public void range_random() {
+        Random random = new Random(21);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(MINUTES);
+            int end = random.nextInt(MINUTES);
+            int step = 1 + random.nextInt(random.nextBoolean() ? 10 : 400);
+            boolean[] expected = new boolean[MINUTES];
+            int length = (end - start + MINUTES) % MINUTES;
+            for (int offset = 0; offset <= length; offset += step) {
+                expected[(start + offset) % MINUTES] = true;
+            }
+            assertSelectable(expected, IntervalTimepointLimiter.range(
+                    toTimepoint(start), toTimepoint(end), step));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void range_rejectsStepBelowOneMinute() {
+        IntervalTimepointLimiter.range(new Timepoint(8, 0), new Timepoint(9, 0), 0);
+    }
+
+    @Test
+    public void setOperations_random() {
+        Random random = new Random(22);
+        for (int i = 0; i < 300; i++) {
+            boolean[] a = new boolean[MINUTES];
+            boolean[] b = new boolean[MINUTES];
+            IntervalTimepointLimiter limiterA = randomLimiter(random, a);
+            IntervalTimepointLimiter limiterB = randomLimiter(random, b);
+
+            boolean[] union = new boolean[MINUTES];
+            boolean[] intersection = new boolean[MINUTES];
+            boolean[] difference = new boolean[MINUTES];
+            for (int minute = 0; minute < MINUTES; minute++) {
+                union[minute] = a[minute] || b[minute];
+                intersection[minute] = a[minute] && b[minute];
+                difference[minute] = a[minute] && !b[minute];
+            }
+            assertSelectable(union, limiterA.union(limiterB));
+            assertSelectable(intersection, limiterA.intersect(limiterB));
+            assertSelectable(difference, limiterA.subtract(limiterB));
+        }
+    }
+
+    @Test
+    public void rangeCount_followsRangesNotMinutes() {
+        // Every 5 minutes from 08:00 to 18:00 except lunch
+        IntervalTimepointLimiter limiter = IntervalTimepointLimiter
+                .range(new Timepoint(8, 0), new Timepoint(18, 0), 5)
+                .subtract(IntervalTimepointLimiter.range(new Timepoint(12, 0), new Timepoint(13, 0), 1));
+        assertEquals(2, limiter.getRangeCount());
+        assertSelectable(or(steps(8 * 60, 11 * 60 + 55, 5), steps(13 * 60 + 5, 18 * 60, 5)), limiter);
+    }
+
+    @Test
+    public void matchesDefaultLimiter() {
+        Random random = new Random(23);
+        for (int i = 0; i < 60; i++) {
+            boolean[] selectable = new boolean[MINUTES];
+            IntervalTimepointLimiter limiter = randomLimiter(random, selectable);
+            int count = 0;
+            for (boolean s : selectable) if (s) count++;
+            if (count == 0) continue;
+
+            Timepoint[] times = new Timepoint[count];
+            count = 0;
+            for (int minute = 0; minute < MINUTES; minute++) {
+                if (selectable[minute]) times[count++] = toTimepoint(minute);
+            }
+            DefaultTimepointLimiter reference = new DefaultTimepointLimiter();
+            reference.setSelectableTimes(times);
+
+            for (int minute = 0; minute < MINUTES; minute++) {
+                Timepoint time = toTimepoint(minute);
+                for (int index = -1; index <= MINUTE_INDEX; index++) {
+                    assertEquals("isOutOfRange " + minute + " index " + index,
+                            reference.isOutOfRange(time, index, Timepoint.MINUTE),
+                            limiter.isOutOfRange(time, index, Timepoint.MINUTE));
+                }
+                for (int type : TYPES) {
+                    assertEquals("roundToNearest " + minute + " type " + type,
+                            reference.roundToNearest(time, type, Timepoint.MINUTE).toSeconds(),
+                            limiter.roundToNearest(time, type, Timepoint.MINUTE).toSeconds());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void none_isOutOfRangeAndRoundsToItself() {
+        IntervalTimepointLimiter none = IntervalTimepointLimiter.none();
+        assertEquals(0, none.getRangeCount());
+        assertSelectable(new boolean[MINUTES], none);
+        for (int minute = 0; minute < MINUTES; minute += 7) {
+            Timepoint time = toTimepoint(minute);
+            for (int index = -1; index <= MINUTE_INDEX; index++) {
+                assertTrue(none.isOutOfRange(time, index, Timepoint.MINUTE));
+            }
+            for (int type : TYPES) {
+                assertEquals(time.toSeconds(), none.roundToNearest(time, type, Timepoint.MINUTE).toSeconds());
+            }
+        }
+        // Nothing left after removing everything.
+        assertEquals(0, IntervalTimepointLimiter.all().subtract(IntervalTimepointLimiter.all()).getRangeCount());
+    }
+
+    @Test
+    public void isOutOfRange_hourHasAnySelectableMinute() {
+        IntervalTimepointLimiter limiter = IntervalTimepointLimiter.range(
+                new Timepoint(9, 50), new Timepoint(11, 10), 40);
+        // 09:50, 10:30, 11:10
+        assertTrue(limiter.isOutOfRange(new Timepoint(8, 0), HOUR_INDEX, Timepoint.MINUTE));
+        assertTrue(!limiter.isOutOfRange(new Timepoint(9, 0), HOUR_INDEX, Timepoint.MINUTE));
+        assertTrue(!limiter.isOutOfRange(new Timepoint(10, 59), HOUR_INDEX, Timepoint.MINUTE));
+        assertTrue(!limiter.isOutOfRange(new Timepoint(11, 0), HOUR_INDEX, Timepoint.MINUTE));
+        assertTrue(limiter.isOutOfRange(new Timepoint(12, 0), HOUR_INDEX, Timepoint.MINUTE));
+        assertTrue(!limiter.isOutOfRange(null, HOUR_INDEX, Timepoint.MINUTE));
+    }
+
+    private static IntervalTimepointLimiter randomLimiter(Random random, boolean[] selectable) {
+        IntervalTimepointLimiter limiter = IntervalTimepointLimiter.none();
+        int ranges = random.nextInt(6);
+        for (int i = 0; i < ranges; i++) {
+            int start = random.nextInt(MINUTES);
+            int end = random.nextInt(MINUTES);
+            int step = 1 + random.nextInt(90);
+            IntervalTimepointLimiter range = IntervalTimepointLimiter.range(
+                    toTimepoint(start), toTimepoint(end), step);
+            boolean subtract = i > 0 && random.nextInt(3) == 0;
+            limiter = subtract ? limiter.subtract(range) : limiter.union(range);
+            int length = (end - start + MINUTES) % MINUTES;
+            for (int offset = 0; offset <= length; offset += step) {
+                selectable[(start + offset) % MINUTES] = !subtract;
+            }
+        }
+        return limiter;
+    }
+
+    private static void assertSelectable(boolean[] expected, IntervalTimepointLimiter limiter) {
+        for (int minute = 0; minute < MINUTES; minute++) {
+            Timepoint time = toTimepoint(minute);
+            assertEquals("minute " + minute, expected[minute], limiter.isSelectable(time));
+            assertEquals("minute " + minute, !expected[minute],
+                    limiter.isOutOfRange(time, MINUTE_INDEX, Timepoint.MINUTE));
+        }
+        // Seconds within a minute are never selectable.
+        assertTrue(!limiter.isSelectable(30));
+    }
+
+    private static boolean[] steps(int start, int end, int step) {
+        boolean[] minutes = new boolean[MINUTES];
+        for (int minute = start; minute <= end; minute += step) minutes[minute] = true;
+        return minutes;
+    }
+
+    private static boolean[] or(boolean[] a, boolean[] b) {
+        boolean[] minutes = new boolean[MINUTES];
+        for (int minute = 0; minute < MINUTES; minute++) minutes[minute] = a[minute] || b[minute];
+        return minutes;
+    }
+
+    private static Timepoint toTimepoint(int minute) {
+        return new Timepoint(minute / 60, minute % 60);
+    }
+}
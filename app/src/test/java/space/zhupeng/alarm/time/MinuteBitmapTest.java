@@ -0,0 +1,115 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link MinuteBitmap} against a TreeSet of the same minutes, the structure the limiter
+ * kept its times in before.
+ */
+public class MinuteBitmapTest {
+
+    private static final int MINUTES = MinuteBitmap.MINUTES_PER_DAY;
+
+    @Test
+    public void empty() {
+        assertSame(new TreeSet<Integer>(), new MinuteBitmap());
+    }
+
+    @Test
+    public void wordAndDayBoundaries() {
+        TreeSet<Integer> reference = new TreeSet<>();
+        MinuteBitmap bitmap = new MinuteBitmap();
+        for (int minute : new int[]{0, 59, 60, 63, 64, 127, 128, 1379, 1380, 1407, 1408, 1439}) {
+            reference.add(minute);
+            bitmap.set(minute);
+            assertSame(reference, bitmap);
+        }
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            TreeSet<Integer> reference = new TreeSet<>();
+            MinuteBitmap bitmap = new MinuteBitmap();
+            fill(random, reference, bitmap, randomSize(random));
+            assertSame(reference, bitmap);
+        }
+    }
+
+    @Test
+    public void setOperations() {
+        Random random = new Random(12);
+        for (int i = 0; i < 100; i++) {
+            TreeSet<Integer> a = new TreeSet<>();
+            TreeSet<Integer> b = new TreeSet<>();
+            MinuteBitmap bitmapA = new MinuteBitmap();
+            MinuteBitmap bitmapB = new MinuteBitmap();
+            fill(random, a, bitmapA, randomSize(random));
+            fill(random, b, bitmapB, randomSize(random));
+
+            TreeSet<Integer> union = new TreeSet<>(a);
+            union.addAll(b);
+            MinuteBitmap bitmap = new MinuteBitmap();
+            bitmap.setUnion(bitmapA, bitmapB);
+            assertSame(union, bitmap);
+
+            TreeSet<Integer> intersection = new TreeSet<>(a);
+            intersection.retainAll(b);
+            bitmap.setIntersection(bitmapA, bitmapB);
+            assertSame(intersection, bitmap);
+
+            TreeSet<Integer> difference = new TreeSet<>(a);
+            difference.removeAll(b);
+            bitmap.setDifference(bitmapA, bitmapB);
+            assertSame(difference, bitmap);
+
+            // The operands may be the result itself, as the limiter does not use that but could.
+            bitmapA.setDifference(bitmapA, bitmapB);
+            assertSame(difference, bitmapA);
+        }
+    }
+
+    private static int randomSize(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(5);
+            case 1:
+                return random.nextInt(60);
+            case 2:
+                return random.nextInt(MINUTES);
+            default:
+                return MINUTES * 3;
+        }
+    }
+
+    private static void fill(Random random, TreeSet<Integer> reference, MinuteBitmap bitmap, int count) {
+        for (int i = 0; i < count; i++) {
+            int minute = random.nextInt(MINUTES);
+            reference.add(minute);
+            bitmap.set(minute);
+        }
+    }
+
+    private static void assertSame(TreeSet<Integer> reference, MinuteBitmap bitmap) {
+        assertEquals(reference.isEmpty(), bitmap.isEmpty());
+        for (int hour = 0; hour < 24; hour++) {
+            Integer first = reference.ceiling(hour * 60);
+            assertEquals("hour " + hour, first != null && first < (hour + 1) * 60, bitmap.hasHour(hour));
+        }
+        for (int minute = -1; minute <= MINUTES; minute++) {
+            if (minute >= 0 && minute < MINUTES) {
+                assertEquals("minute " + minute, reference.contains(minute), bitmap.get(minute));
+            }
+            Integer ceiling = reference.ceiling(minute);
+            Integer floor = reference.floor(minute);
+            assertEquals("next " + minute, ceiling == null ? -1 : ceiling, bitmap.next(minute));
+            assertEquals("previous " + minute, floor == null ? -1 : floor, bitmap.previous(minute));
+        }
+    }
+}
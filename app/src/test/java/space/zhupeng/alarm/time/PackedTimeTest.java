@@ -0,0 +1,211 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import space.zhupeng.alarm.AllocationCounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link PackedTime} against the two field Timepoint it replaced, and that a simulated drag
+ * over the picker's packed hot path allocates nothing.
+ */
+public class PackedTimeTest {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * The hour and minute arithmetic of Timepoint before it was packed.
+     */
+    private static final class FieldTimepoint {
+        int hour;
+        int minute;
+
+        FieldTimepoint(int hour, int minute) {
+            this.hour = hour % 24;
+            this.minute = minute % 60;
+        }
+
+        int toSeconds() {
+            return 3600 * hour + 60 * minute;
+        }
+
+        void add(int type, int value) {
+            if (type == Timepoint.MINUTE) value *= 60;
+            if (type == Timepoint.HOUR) value *= 3600;
+            value += toSeconds();
+
+            switch (type) {
+                case Timepoint.MINUTE:
+                    minute = (value % 3600) / 60;
+                case Timepoint.HOUR:
+                    hour = (value / 3600) % 24;
+            }
+        }
+
+        boolean equals(FieldTimepoint time, int resolution) {
+            boolean output = true;
+            switch (resolution) {
+                case Timepoint.MINUTE:
+                    output = time.minute == minute;
+                case Timepoint.HOUR:
+                    output = output && time.hour == hour;
+            }
+            return output;
+        }
+    }
+
+    @Test
+    public void of_matchesFields() {
+        for (int hour = 0; hour < 48; hour++) {
+            for (int minute = 0; minute < 120; minute++) {
+                FieldTimepoint expected = new FieldTimepoint(hour, minute);
+                int time = PackedTime.of(hour, minute);
+                assertEquals(expected.toSeconds(), time);
+                assertEquals(expected.hour, PackedTime.getHour(time));
+                assertEquals(expected.minute, PackedTime.getMinute(time));
+                assertEquals(expected.hour, PackedTime.get(time, Timepoint.HOUR));
+                assertEquals(expected.minute, PackedTime.get(time, Timepoint.MINUTE));
+            }
+        }
+    }
+
+    @Test
+    public void timepoint_roundTrip() {
+        assertEquals(PackedTime.NONE, PackedTime.of(null));
+        assertNull(PackedTime.toTimepoint(PackedTime.NONE));
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            int time = minute * PackedTime.SECONDS_PER_MINUTE;
+            Timepoint timepoint = PackedTime.toTimepoint(time);
+            assertEquals(minute / 60, timepoint.getHour());
+            assertEquals(minute % 60, timepoint.getMinute());
+            assertEquals(time, PackedTime.of(timepoint));
+        }
+    }
+
+    @Test
+    public void with_replacesOneField() {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            int time = minute * PackedTime.SECONDS_PER_MINUTE;
+            for (int hour = 0; hour < 24; hour++) {
+                assertEquals(PackedTime.of(hour, minute % 60), PackedTime.withHour(time, hour));
+            }
+            for (int m = 0; m < 60; m++) {
+                assertEquals(PackedTime.of(minute / 60, m), PackedTime.withMinute(time, m));
+            }
+        }
+    }
+
+    @Test
+    public void add_matchesFieldsForward() {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute += 7) {
+            for (int type = Timepoint.HOUR; type <= Timepoint.MINUTE; type++) {
+                for (int value = 0; value < 3000; value += 13) {
+                    FieldTimepoint expected = new FieldTimepoint(minute / 60, minute % 60);
+                    expected.add(type, value);
+                    int time = PackedTime.add(minute * PackedTime.SECONDS_PER_MINUTE, type, value);
+                    assertEquals(minute + " + " + value + " type " + type, expected.toSeconds(), time);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void add_wrapsBackward() {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute += 7) {
+            for (int value = -3000; value <= 0; value += 11) {
+                int time = minute * PackedTime.SECONDS_PER_MINUTE;
+                assertEquals(floorMod(minute + value, MINUTES_PER_DAY) * PackedTime.SECONDS_PER_MINUTE,
+                        PackedTime.add(time, Timepoint.MINUTE, value));
+                assertEquals(floorMod(minute + value * 60, MINUTES_PER_DAY) * PackedTime.SECONDS_PER_MINUTE,
+                        PackedTime.add(time, Timepoint.HOUR, value));
+            }
+        }
+    }
+
+    @Test
+    public void compareAndEquals_matchFields() {
+        for (int a = 0; a < MINUTES_PER_DAY; a += 3) {
+            FieldTimepoint fieldA = new FieldTimepoint(a / 60, a % 60);
+            int timeA = fieldA.toSeconds();
+            for (int b = 0; b < MINUTES_PER_DAY; b += 5) {
+                FieldTimepoint fieldB = new FieldTimepoint(b / 60, b % 60);
+                int timeB = fieldB.toSeconds();
+                assertEquals(Integer.signum(timeA - timeB), PackedTime.compare(timeA, timeB));
+                for (int resolution = Timepoint.HOUR; resolution <= Timepoint.MINUTE; resolution++) {
+                    assertEquals(a + " " + b + " " + resolution, fieldA.equals(fieldB, resolution),
+                            PackedTime.equals(timeA, timeB, resolution));
+                }
+            }
+        }
+        assertFalse(PackedTime.equals(PackedTime.NONE, 0, Timepoint.HOUR));
+        assertFalse(PackedTime.equals(0, PackedTime.NONE, Timepoint.MINUTE));
+    }
+
+    @Test
+    public void roundAndRange() {
+        for (int time = 0; time < PackedTime.SECONDS_PER_DAY; time += 37) {
+            assertEquals(time / 60 * 60, PackedTime.round(time, Timepoint.MINUTE));
+            assertEquals(time / 3600 * 3600, PackedTime.round(time, Timepoint.HOUR));
+        }
+        int min = PackedTime.of(8, 0);
+        int max = PackedTime.of(18, 30);
+        assertTrue(PackedTime.isInRange(min, min, max));
+        assertTrue(PackedTime.isInRange(max, min, max));
+        assertFalse(PackedTime.isInRange(min - 60, min, max));
+        assertFalse(PackedTime.isInRange(max + 60, min, max));
+        assertTrue(PackedTime.isInRange(0, PackedTime.NONE, max));
+        assertTrue(PackedTime.isInRange(PackedTime.SECONDS_PER_DAY - 60, min, PackedTime.NONE));
+    }
+
+    @Test
+    public void simulatedDrag_allocatesNothing() {
+        DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setMinTime(new Timepoint(6, 0));
+        limiter.setMaxTime(new Timepoint(22, 0));
+        limiter.setDisabledTimes(new Timepoint[]{new Timepoint(12, 0), new Timepoint(12, 30)});
+
+        long sum = drag(limiter, 50);
+        AllocationCounter counter = AllocationCounter.start();
+        sum += drag(limiter, 500);
+        assertEquals(0, counter.getAllocatedBytes());
+        assertTrue(sum != 0);
+    }
+
+    /**
+     * Drag a finger around both circles the way the picker handles a move event: the touch angle,
+     * the time at that angle, snapping it to a valid time and the validity of every label.
+     */
+    private static long drag(DefaultTimepointLimiter limiter, int turns) {
+        long sum = 0;
+        int current = PackedTime.of(9, 15);
+        for (int turn = 0; turn < turns; turn++) {
+            for (int step = 0; step < 720; step++) {
+                double angle = step * Math.PI / 360;
+                int degrees = RadialSelectorView.asinDegrees(Math.abs(Math.sin(angle)));
+                int index = turn % 2 == 0 ? TimePickerDialog.HOUR_INDEX : TimePickerDialog.MINUTE_INDEX;
+                int value = index == TimePickerDialog.HOUR_INDEX ? degrees / 30 + 12 : degrees / 6;
+                int selection = index == TimePickerDialog.HOUR_INDEX
+                        ? PackedTime.withHour(current, value) : PackedTime.withMinute(current, value);
+                int valid = limiter.roundToNearest(selection, -1, Timepoint.MINUTE);
+                if (!PackedTime.equals(valid, current, Timepoint.MINUTE)) {
+                    current = valid;
+                }
+                for (int label = 0; label < 12; label++) {
+                    int time = index == TimePickerDialog.HOUR_INDEX
+                            ? PackedTime.withHour(current, label) : PackedTime.withMinute(current, label * 5);
+                    if (limiter.isOutOfRange(time, index, Timepoint.MINUTE)) sum++;
+                }
+                sum += current;
+            }
+        }
+        return sum;
+    }
+
+    private static int floorMod(int x, int y) {
+        return ((x % y) + y) % y;
+    }
+}
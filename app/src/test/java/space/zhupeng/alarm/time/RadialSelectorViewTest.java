@@ -0,0 +1,84 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the table lookup of {@link RadialSelectorView#asinDegrees(double)} against the arc sine
+ * computed directly.
+ */
+public class RadialSelectorViewTest {
+
+    private static int directAsinDegrees(double sine) {
+        return (int) (Math.asin(sine) * 180 / Math.PI);
+    }
+
+    private static void assertSameDegrees(double sine) {
+        assertEquals("sine " + sine + " (bits " + Long.toHexString(Double.doubleToLongBits(sine)) + ")",
+                directAsinDegrees(sine), RadialSelectorView.asinDegrees(sine));
+    }
+
+    @Test
+    public void asinDegrees_aroundEveryDegreeBoundary() {
+        // The smallest sine of each degree, found by bisecting the bits of the doubles in [0, 1]
+        long one = Double.doubleToLongBits(1);
+        for (int degrees = 1; degrees <= directAsinDegrees(1); degrees++) {
+            long low = 0;
+            long high = one;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (directAsinDegrees(Double.longBitsToDouble(mid)) >= degrees) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            // Every double within a wide band of ulps around the boundary
+            for (long bits = Math.max(0, low - 4096); bits <= Math.min(one, low + 4096); bits++) {
+                assertSameDegrees(Double.longBitsToDouble(bits));
+            }
+        }
+    }
+
+    @Test
+    public void asinDegrees_evenlySpaced() {
+        int steps = 1 << 22;
+        for (int i = 0; i <= steps; i++) {
+            assertSameDegrees((double) i / steps);
+        }
+    }
+
+    @Test
+    public void asinDegrees_random() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1 << 22; i++) {
+            assertSameDegrees(random.nextDouble());
+        }
+    }
+
+    @Test
+    public void asinDegrees_touchRatios() {
+        // The ratios getDegreesFromCoords computes for touches on a 1080 px wide circle
+        float center = 540;
+        for (int y = 0; y <= 1080; y++) {
+            for (int x = 0; x <= 1080; x++) {
+                double hypotenuse = Math.sqrt((y - center) * (y - center) + (x - center) * (x - center));
+                float opposite = Math.abs(y - center);
+                assertSameDegrees(opposite / hypotenuse);
+            }
+        }
+    }
+
+    @Test
+    public void asinDegrees_edgeCases() {
+        double[] sines = {0, -0.0, 1, Math.nextUp(0), Math.nextAfter(1, 0), Double.MIN_VALUE,
+                -Double.MIN_VALUE, Math.nextUp(1), -1, 2, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double sine : sines) {
+            assertSameDegrees(sine);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package space.zhupeng.alarm.time;
+
+import org.junit.Test;
+
+import space.zhupeng.alarm.AllocationCounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static space.zhupeng.alarm.time.TimePickerDialog.MINUTE_INDEX;
+
+/**
+ * Checks that {@link TextValidity} asks its validator only after it was invalidated, and that
+ * refreshing and reading it as {@link RadialTextsView} does on every frame allocates nothing.
+ */
+public class TextValidityTest {
+
+    private static final int[] MINUTES = {0, 5, 10, 15, 20, 25, 30, 35, 40, 45, 50, 55};
+
+    private static class CountingValidator implements RadialTextsView.SelectionValidator {
+        int mCalls;
+        int mLimit = 60;
+
+        @Override
+        public boolean isValidSelection(int selection) {
+            mCalls++;
+            return selection < mLimit;
+        }
+    }
+
+    @Test
+    public void update_asksOnlyAfterInvalidate() {
+        TextValidity validity = new TextValidity(MINUTES);
+        CountingValidator validator = new CountingValidator();
+
+        validity.update(validator);
+        assertEquals(MINUTES.length, validator.mCalls);
+        for (int frame = 0; frame < 100; frame++) validity.update(validator);
+        assertEquals(MINUTES.length, validator.mCalls);
+
+        validity.invalidate();
+        validity.invalidate();
+        validity.update(validator);
+        validity.update(validator);
+        assertEquals(2 * MINUTES.length, validator.mCalls);
+    }
+
+    @Test
+    public void update_reportsOnlyChanges() {
+        TextValidity validity = new TextValidity(MINUTES);
+        CountingValidator validator = new CountingValidator();
+
+        assertTrue(validity.update(validator));
+        for (int i = 0; i < validity.size(); i++) assertTrue(validity.isValid(i));
+
+        validity.invalidate();
+        assertTrue(!validity.update(validator));
+
+        validator.mLimit = 30;
+        assertTrue(!validity.update(validator));
+        validity.invalidate();
+        assertTrue(validity.update(validator));
+        for (int i = 0; i < validity.size(); i++) {
+            assertEquals("value " + validity.getValue(i), MINUTES[i] < 30, validity.isValid(i));
+        }
+    }
+
+    @Test
+    public void steadyFrames_allocateNothing() {
+        final DefaultTimepointLimiter limiter = new DefaultTimepointLimiter();
+        limiter.setMinTime(new Timepoint(9, 20));
+        limiter.setMaxTime(new Timepoint(17, 40));
+        final int[] currentTime = {PackedTime.of(9, 0)};
+        // The minute validator of RadialPickerLayout
+        RadialTextsView.SelectionValidator validator = new RadialTextsView.SelectionValidator() {
+            @Override
+            public boolean isValidSelection(int selection) {
+                int newTime = PackedTime.withMinute(currentTime[0], selection);
+                return !limiter.isOutOfRange(newTime, MINUTE_INDEX, Timepoint.MINUTE);
+            }
+        };
+        TextValidity validity = new TextValidity(MINUTES);
+        int valid = drawFrames(validity, validator, 1);
+
+        AllocationCounter counter = AllocationCounter.start();
+        for (int hour = 0; hour < 24; hour++) {
+            currentTime[0] = PackedTime.withHour(currentTime[0], hour);
+            validity.invalidate();
+            valid += drawFrames(validity, validator, 10);
+        }
+        assertEquals(0L, counter.getAllocatedBytes());
+        assertTrue(valid > 0);
+
+        currentTime[0] = PackedTime.of(9, 0);
+        validity.invalidate();
+        validity.update(validator);
+        for (int i = 0; i < validity.size(); i++) {
+            assertEquals("minute " + MINUTES[i], MINUTES[i] >= 20, validity.isValid(i));
+        }
+    }
+
+    /**
+     * Refresh and read the validity the way {@link RadialTextsView#onDraw} does.
+     */
+    private static int drawFrames(TextValidity validity, RadialTextsView.SelectionValidator validator,
+                                  int frames) {
+        int valid = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            validity.update(validator);
+            for (int i = 0; i < validity.size(); i++) {
+                if (validity.isValid(i)) valid++;
+            }
+        }
+        return valid;
+    }
+}